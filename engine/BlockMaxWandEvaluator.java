@@ -0,0 +1,70 @@
+public class BlockMaxWandEvaluator implements QueryEvaluator {
+    // Document-at-a-time evaluation with Block-Max WAND pruning (Ding and Suel, 2011), one segment after the other
+    // The pivot is found as in WAND, then the upper bounds of the blocks holding the pivot's document are read from the
+    // headers of the cursors up to the pivot. If they cannot beat the threshold, no document is worth scoring until the
+    // first of those blocks ends or the next cursor starts, and the cursors up to the pivot skip there without decoding
+    // the blocks in between. Postings without blocks (the vbyte codec) are bounded as a whole, like in WAND
+
+    @Override
+    public void evaluate(RankedQuery query, TopDocsCollector collector) {
+        for (int segment = 0; segment < query.index.getSegmentCount(); segment++) {
+            evaluateSegment(query, segment, collector);
+        }
+    }
+
+    private static void evaluateSegment(RankedQuery query, int segment, TopDocsCollector collector) {
+        int docBase = query.index.getDocBase(segment);
+        TermCursor[] cursors = new TermCursor[query.terms.length];
+        int cursorCount = TermCursor.openCursors(query, segment, cursors);
+
+        double[] termScores = new double[query.terms.length];
+        boolean[] matchedTerms = new boolean[query.terms.length];
+        while (true) {
+            TermCursor.sortByDocId(cursors, cursorCount);
+
+            double threshold = collector.threshold();
+            int pivot = WandEvaluator.findPivot(cursors, cursorCount, threshold);
+            if (pivot < 0) {
+                // No document left in the segment can enter the top documents
+                break;
+            }
+
+            // Every cursor on the pivot's document may hold it
+            int pivotDocId = cursors[pivot].docId();
+            while (pivot + 1 < cursorCount && cursors[pivot + 1].docId() == pivotDocId) {
+                pivot++;
+            }
+
+            double blockBound = 0;
+            for (int cursor = 0; cursor <= pivot; cursor++) {
+                blockBound += cursors[cursor].blockUpperBound(query, pivotDocId);
+            }
+
+            if (blockBound > threshold) {
+                if (cursors[0].docId() == pivotDocId) {
+                    WandEvaluator.scoreDocument(query, docBase, cursors, cursorCount, termScores, matchedTerms, collector);
+                } else {
+                    for (int cursor = 0; cursor < pivot; cursor++) {
+                        cursors[cursor].postings.advance(pivotDocId);
+                    }
+                }
+            } else {
+                // Skip to the first document that is in another block of one of the cursors or in a later cursor
+                int nextDocId = pivot + 1 < cursorCount ? cursors[pivot + 1].docId() : PostingsIterator.NO_MORE_DOCS;
+                for (int cursor = 0; cursor <= pivot; cursor++) {
+                    int blockLastDocId = cursors[cursor].blockLastDocId();
+                    if (blockLastDocId != PostingsIterator.NO_MORE_DOCS) {
+                        nextDocId = Math.min(nextDocId, blockLastDocId + 1);
+                    }
+                }
+                for (int cursor = 0; cursor <= pivot; cursor++) {
+                    cursors[cursor].postings.advance(nextDocId);
+                }
+            }
+        }
+
+        for (int cursor = 0; cursor < cursorCount; cursor++) {
+            query.addDecodedPostings(cursors[cursor].decodedPostings());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class BlockPostingsEncoder {
+    // Block postings layout, written for every group of BLOCK_SIZE postings (the last block may be shorter):
+    //   header: lastDocId - lastDocId of the previous block (vbyte), maximum tf in the block (vbyte), length of the
+    //           shortest document in the block (vbyte), body length (vbyte)
+    //   body:   docId gaps as a PForDelta stream, followed by the tfs as a PForDelta stream
+    // A PForDelta stream stores the minimum value (vbyte), a bit width (byte) and an exception count (byte),
+    // then every value minus the minimum bit-packed with that width, then the high bits of the values that did not fit
+    // as (index (byte), high bits (vbyte)) exceptions. The width is chosen so at most 10% of the values are exceptions.
+    static final int BLOCK_SIZE = 128;
+    private static final int MAX_EXCEPTION_PERCENT = 10;
+
+    private final int[] docIds = new int[BLOCK_SIZE];
+    private final int[] frequencies = new int[BLOCK_SIZE];
+    private final int[] values = new int[BLOCK_SIZE];
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private int[] documentLengths;
+    private long collectionFrequency;
+    private int maxFrequency;
+    private int minDocumentLength;
+
+    public void encode(PostingsIterator postings, int[] documentLengths, ByteArrayOutputStream out) throws IOException {
+        // Encode a whole postings list into blocks of BLOCK_SIZE postings, keeping the statistics of the list
+
+        this.documentLengths = documentLengths;
+        int previousLastDocId = 0;
+        int blockSize = 0;
+        collectionFrequency = 0;
+        maxFrequency = 0;
+        minDocumentLength = Integer.MAX_VALUE;
+
+        for (int docId = postings.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postings.nextDoc()) {
+            docIds[blockSize] = docId;
+            frequencies[blockSize] = postings.frequency();
+            collectionFrequency += frequencies[blockSize];
+            maxFrequency = Math.max(maxFrequency, frequencies[blockSize]);
+            minDocumentLength = Math.min(minDocumentLength, documentLengths[docId]);
+            blockSize++;
+            if (blockSize == BLOCK_SIZE) {
+                writeBlock(blockSize, previousLastDocId, out);
+                previousLastDocId = docIds[blockSize - 1];
+                blockSize = 0;
+            }
+        }
+
+        if (blockSize > 0) {
+            writeBlock(blockSize, previousLastDocId, out);
+        }
+    }
+
+    public long collectionFrequency() {
+        // Sum of the tfs of the list encoded last
+        return collectionFrequency;
+    }
+
+    public int maxFrequency() {
+        return maxFrequency;
+    }
+
+    public int minDocumentLength() {
+        return minDocumentLength;
+    }
+
+    private void writeBlock(int blockSize, int previousLastDocId, ByteArrayOutputStream out) throws IOException {
+        // Write the skip header followed by the bit-packed docId gaps and tfs of one block
+        // The maximum tf and shortest document length of the header bound the BM25 scores of the block
+
+        int maxFrequency = 0;
+        int minDocumentLength = Integer.MAX_VALUE;
+        int previousDocId = previousLastDocId;
+        for (int idx = 0; idx < blockSize; idx++) {
+            values[idx] = docIds[idx] - previousDocId;
+            previousDocId = docIds[idx];
+            maxFrequency = Math.max(maxFrequency, frequencies[idx]);
+            minDocumentLength = Math.min(minDocumentLength, documentLengths[docIds[idx]]);
+        }
+
+        body.reset();
+        writeStream(values, blockSize, body);
+        writeStream(frequencies, blockSize, body);
+
+        writeVByte(docIds[blockSize - 1] - previousLastDocId, out);
+        writeVByte(maxFrequency, out);
+        writeVByte(minDocumentLength, out);
+        writeVByte(body.size(), out);
+        body.writeTo(out);
+    }
+
+    private static void writeStream(int[] values, int count, ByteArrayOutputStream out) {
+        // Frame-of-reference encode the values against their minimum and bit-pack them, patching outliers as exceptions
+
+        int min = Integer.MAX_VALUE;
+        for (int idx = 0; idx < count; idx++) {
+            min = Math.min(min, values[idx]);
+        }
+
+        int[] bitHistogram = new int[33];
+        for (int idx = 0; idx < count; idx++) {
+            bitHistogram[bitsRequired(values[idx] - min)]++;
+        }
+
+        // Smallest width that leaves at most MAX_EXCEPTION_PERCENT of the values as exceptions
+        int bitWidth = 32;
+        int exceptions = 0;
+        int maxExceptions = count * MAX_EXCEPTION_PERCENT / 100;
+        while (bitWidth > 0 && exceptions + bitHistogram[bitWidth] <= maxExceptions) {
+            exceptions += bitHistogram[bitWidth];
+            bitWidth--;
+        }
+
+        writeVByte(min, out);
+        out.write(bitWidth);
+        out.write(exceptions);
+
+        long mask = (1L << bitWidth) - 1;
+        long buffer = 0;
+        int bufferedBits = 0;
+        for (int idx = 0; idx < count; idx++) {
+            buffer |= ((values[idx] - min) & mask) << bufferedBits;
+            bufferedBits += bitWidth;
+            while (bufferedBits >= 8) {
+                out.write((int) (buffer & 0xFF));
+                buffer >>>= 8;
+                bufferedBits -= 8;
+            }
+        }
+        if (bufferedBits > 0) {
+            out.write((int) (buffer & 0xFF));
+        }
+
+        for (int idx = 0; idx < count; idx++) {
+            if (bitsRequired(values[idx] - min) > bitWidth) {
+                out.write(idx);
+                writeVByte((values[idx] - min) >>> bitWidth, out);
+            }
+        }
+    }
+
+    private static int bitsRequired(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+
+    private static void writeVByte(int value, ByteArrayOutputStream out) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
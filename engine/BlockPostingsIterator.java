@@ -0,0 +1,212 @@
+import java.nio.ByteBuffer;
+
+public class BlockPostingsIterator implements PostingsIterator {
+    // Decodes postings written by BlockPostingsEncoder one block at a time
+    // advance() reads only the block headers to skip every block whose last docId is below the target, and
+    // advanceShallow() moves to the block of a target without decoding it, so the bounds in its header can be checked
+    // before paying for its postings
+
+    private final ByteBuffer data;
+    private final int documentFrequency;
+    private final int[] docIds = new int[BlockPostingsEncoder.BLOCK_SIZE];
+    private final int[] frequencies = new int[BlockPostingsEncoder.BLOCK_SIZE];
+    private int position;
+    private int remainingPostings;
+    private int blockSize = 0;
+    private int blockIndex = -1;
+    private int blockBodyStart;
+    private int blockEnd;
+    private int blockBaseDocId = 0;
+    private int blockLastDocId = -1;
+    private int blockMaxFrequency = 0;
+    private int blockMinDocumentLength = 0;
+    private int decodedPostings = 0;
+    private boolean blockDecoded = false;
+    private int docId = -1;
+
+    BlockPostingsIterator(ByteBuffer data, int offset, int documentFrequency) {
+        this.data = data;
+        this.position = offset;
+        this.documentFrequency = documentFrequency;
+        this.remainingPostings = documentFrequency;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (blockDecoded && blockIndex + 1 < blockSize) {
+            blockIndex++;
+            docId = docIds[blockIndex];
+            return docId;
+        }
+        if ((blockDecoded || blockSize == 0) && !nextBlock()) {
+            return docId;
+        }
+        decodeBlock();
+        blockIndex = 0;
+        docId = docIds[0];
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+
+        if (blockSize == 0 || blockLastDocId < target) {
+            // Skip whole blocks using their headers only
+            do {
+                if (!nextBlock()) {
+                    return docId;
+                }
+            } while (blockLastDocId < target);
+        }
+
+        int idx = blockIndex + 1;
+        if (!blockDecoded) {
+            decodeBlock();
+            idx = 0;
+        }
+        while (docIds[idx] < target) {
+            idx++;
+        }
+        blockIndex = idx;
+        docId = docIds[idx];
+        return docId;
+    }
+
+    public int advanceShallow(int target) {
+        // Move to the block holding the first docId greater than or equal to target reading block headers only, and
+        // return the last docId of that block, NO_MORE_DOCS if there is none
+        // The current posting is left behind once the block changes, so advance() has to be called before reading it
+
+        if (blockSize == 0 || blockLastDocId < target) {
+            do {
+                if (!nextBlock()) {
+                    return NO_MORE_DOCS;
+                }
+            } while (blockLastDocId < target);
+        }
+        return blockLastDocId;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int frequency() {
+        return frequencies[blockIndex];
+    }
+
+    @Override
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    public int blockLastDocId() {
+        // Last docId of the current block, available without decoding the block
+        return blockLastDocId;
+    }
+
+    public int blockMaxFrequency() {
+        // Highest tf within the current block, available without decoding the block
+        return blockMaxFrequency;
+    }
+
+    public int blockMinDocumentLength() {
+        // Length of the shortest document of the current block, available without decoding the block
+        return blockMinDocumentLength;
+    }
+
+    public int decodedPostings() {
+        // Number of postings decoded so far, a block is decoded as a whole
+        return decodedPostings;
+    }
+
+    private boolean nextBlock() {
+        // Move to the header of the following block without decoding its postings
+
+        if (remainingPostings == 0) {
+            docId = NO_MORE_DOCS;
+            blockLastDocId = NO_MORE_DOCS;
+            return false;
+        }
+        if (blockSize > 0) {
+            blockBaseDocId = blockLastDocId;
+            position = blockEnd;
+        }
+
+        blockLastDocId = blockBaseDocId + readVByte();
+        blockMaxFrequency = readVByte();
+        blockMinDocumentLength = readVByte();
+        int blockLength = readVByte();
+        blockBodyStart = position;
+        blockEnd = position + blockLength;
+
+        blockSize = Math.min(BlockPostingsEncoder.BLOCK_SIZE, remainingPostings);
+        remainingPostings -= blockSize;
+        blockIndex = -1;
+        blockDecoded = false;
+        return true;
+    }
+
+    private void decodeBlock() {
+        // Unpack the docId gaps and tfs of the current block
+
+        position = blockBodyStart;
+        readStream(docIds, blockSize);
+        readStream(frequencies, blockSize);
+
+        int previousDocId = blockBaseDocId;
+        for (int idx = 0; idx < blockSize; idx++) {
+            previousDocId += docIds[idx];
+            docIds[idx] = previousDocId;
+        }
+        blockDecoded = true;
+        decodedPostings += blockSize;
+    }
+
+    private void readStream(int[] values, int count) {
+        // Decode a PForDelta stream: unpack the fixed-width values, patch the exceptions and add back the minimum
+
+        int min = readVByte();
+        int bitWidth = data.get(position++) & 0xFF;
+        int exceptions = data.get(position++) & 0xFF;
+
+        long mask = (1L << bitWidth) - 1;
+        long buffer = 0;
+        int bufferedBits = 0;
+        for (int idx = 0; idx < count; idx++) {
+            while (bufferedBits < bitWidth) {
+                buffer |= (long) (data.get(position++) & 0xFF) << bufferedBits;
+                bufferedBits += 8;
+            }
+            values[idx] = (int) (buffer & mask);
+            buffer >>>= bitWidth;
+            bufferedBits -= bitWidth;
+        }
+
+        for (int exception = 0; exception < exceptions; exception++) {
+            int idx = data.get(position++) & 0xFF;
+            values[idx] |= readVByte() << bitWidth;
+        }
+
+        for (int idx = 0; idx < count; idx++) {
+            values[idx] += min;
+        }
+    }
+
+    private int readVByte() {
+        byte current = data.get(position++);
+        int value = current & 0x7F;
+        int shift = 7;
+        while ((current & 0x80) != 0) {
+            current = data.get(position++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+}
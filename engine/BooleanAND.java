@@ -2,19 +2,13 @@ import javax.swing.text.Document;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class BooleanAND {
-    static ArrayList<Integer> documentLengths;
-    static Map<String, Integer> termToIdLexicon;
-    static Map<Integer, String> idToTermLexicon;
-    static Map<Integer, ArrayList<Integer>> invertedIndex;
-    static HashMap<Integer, String> internalIdToDocnoMap = new HashMap<>();
-    static HashMap<String, Integer> docnoToInternalIdMap = new HashMap<>();
-    static HashMap<Integer, String[]> metadataDict = new HashMap<>();
+    static SegmentedIndex index;
+    static DocnoTable docnoTable;
+    static String[][] metadataDict;
     static BufferedWriter queryResultBW;
     final static String Q0_VALUE = "Q0";
     final static String runTag = "bxshengAND";
@@ -44,7 +38,7 @@ public class BooleanAND {
                 String topicId = queryLine;
                 queryLine = queriesBR.readLine();
                 String query = queryLine;
-                ArrayList<Integer> queryResults = executeQuery(query);
+                IntArrayList queryResults = executeQuery(query);
                 if(!queryResults.isEmpty()) {
                     appendTRECResultToOutputFile(queryResults, topicId);
                 } else {
@@ -59,73 +53,80 @@ public class BooleanAND {
         closeWriter();
     }
 
-    private static ArrayList<Integer> executeQuery(String query) {
-        // tokenize query, transform to Id's, fetch postings lists, and get result by intersecting
+    private static IntArrayList executeQuery(String query) {
+        // tokenize query, fetch postings lists of the terms, and get result by intersecting
 
         Logger.getLogger("BooleanAND").log(Level.INFO, "Executing query: " + query);
 
-        ArrayList<String> tokens = DocumentUtils.tokenize(query);
-        ArrayList<Integer> tokenIds = new ArrayList<>();
+        String queryText = PhraseQuery.removeOperators(query);
+        ArrayList<String> tokens = index.isStemmed() ? DocumentUtils.tokenizeAndStem(queryText) : DocumentUtils.tokenize(queryText);
+        ArrayList<PostingsIterator> lists = new ArrayList<>();
         for(String token: tokens) {
-            if(termToIdLexicon.containsKey(token)) {
-                tokenIds.add(termToIdLexicon.get(token));
+            PostingsIterator postings = index.postings(token);
+            if(postings != null) {
+                lists.add(postings);
             }
         }
 
-        ArrayList<ArrayList<Integer>> lists = new ArrayList<>();
-        for(int id: tokenIds) {
-            lists.add(invertedIndex.get(id));
+        // Quoted phrases are intersected like terms, a phrase with a term missing from the index matches nothing
+        if(index.isPositional()) {
+            for(PhraseQuery phrase: PhraseQuery.parse(query, index.isStemmed())) {
+                PostingsIterator matches = phrase.matches(index);
+                if(matches == null) {
+                    return new IntArrayList();
+                }
+                lists.add(matches);
+            }
         }
 
         // Sort posting lists by size
-        lists.sort(Comparator.comparingInt(ArrayList::size));
+        lists.sort(Comparator.comparingInt(PostingsIterator::documentFrequency));
 
         // Return if no postings lists fetched from query
         if(lists.isEmpty()) {
-            return new ArrayList<>();
+            return new IntArrayList();
         }
 
-        ArrayList<Integer> baseList = lists.get(0);
-
         // intersect all lists
-        for(int listIdx = 1; listIdx < lists.size(); listIdx++) {
-            baseList = intersectLists(baseList, lists.get(listIdx));
-        }
-
-        return baseList;
+        return intersectLists(lists);
     }
 
-    private static ArrayList<Integer> intersectLists(ArrayList<Integer> list1, ArrayList<Integer> list2) {
-        // Given two lists (list1.size() <= list2.size()), intersect the documents that exist in both lists
-
-        ArrayList<Integer> result = new ArrayList<>();
-        int list1Idx = 0;
-        int list2Idx = 0;
-
-        while(list1Idx != list1.size() && list2Idx != list2.size()) {
-            if(list1.get(list1Idx).equals(list2.get(list2Idx))) {
-                result.add(list1.get(list1Idx));
-                result.add(0);
-                list1Idx += 2;
-                list2Idx += 2;
-            } else if(list1.get(list1Idx) < list2.get(list2Idx)) {
-                list1Idx += 2;
-            } else {
-                list2Idx += 2;
+    private static IntArrayList intersectLists(ArrayList<PostingsIterator> lists) {
+        // Given postings lists sorted by size, intersect the documents that exist in all lists
+        // The shortest list leads, the others are advanced to its candidates without decoding into intermediate lists
+
+        IntArrayList result = new IntArrayList();
+        PostingsIterator lead = lists.get(0);
+        int docId = lead.nextDoc();
+
+        while(docId != PostingsIterator.NO_MORE_DOCS) {
+            boolean inAllLists = true;
+            for(int listIdx = 1; listIdx < lists.size(); listIdx++) {
+                int otherDocId = lists.get(listIdx).advance(docId);
+                if(otherDocId != docId) {
+                    // Skip the lead list ahead to the first candidate the other list could contain
+                    docId = lead.advance(otherDocId);
+                    inAllLists = false;
+                    break;
+                }
+            }
+
+            if(inAllLists) {
+                result.add(docId);
+                docId = lead.nextDoc();
             }
         }
 
         return result;
     }
 
-    private static void appendTRECResultToOutputFile(ArrayList<Integer> queryResults, String topicId) throws IOException {
+    private static void appendTRECResultToOutputFile(IntArrayList queryResults, String topicId) throws IOException {
         // For each query result, append results to output file in TREC format
 
         int rank = 1;
-        for(int resultIdx = 0; resultIdx < queryResults.size(); resultIdx += 2) {
-            int id = queryResults.get(resultIdx);
-            String docno = internalIdToDocnoMap.get(id);
-            int score = (queryResults.size() / 2) - rank;
+        for(int idx = 0; idx < queryResults.size(); idx++) {
+            String docno = docnoTable.getDocno(queryResults.get(idx));
+            int score = queryResults.size() - rank;
             queryResultBW.write(topicId + " " + Q0_VALUE + " " + docno + " " + rank + " " + score + " " + runTag);
             queryResultBW.newLine();
             rank++;
@@ -133,55 +134,22 @@ public class BooleanAND {
     }
 
     private static void initializeObjects(String store_path) {
-        // Initializes data saved in FS (lexicon dicts, inverted index, metadata, document lengths)
+        // Opens the index saved in FS (lexicon, inverted index, document lengths)
 
         try {
-            Logger.getLogger("BooleanAND").log(Level.INFO, "Deserializing lexicon dictionaries...");
-            FileInputStream fis = new FileInputStream(store_path + "/termToIdLexicon.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            termToIdLexicon = (HashMap) ois.readObject();
-
-            fis = new FileInputStream(store_path + "/idToTermLexicon.ser");
-            ois = new ObjectInputStream(fis);
-            idToTermLexicon = (HashMap) ois.readObject();
-
-            Logger.getLogger("BooleanAND").log(Level.INFO, "Deserializing document lengths array...");
-            fis = new FileInputStream(store_path + "/documentLengths.ser");
-            ois = new ObjectInputStream(fis);
-            documentLengths = (ArrayList<Integer>) ois.readObject();
-
-            Logger.getLogger("BooleanAND").log(Level.INFO, "Deserializing inverted index...");
-            fis = new FileInputStream(store_path + "/invertedIndex.ser");
-            ois = new ObjectInputStream(fis);
-            invertedIndex = (HashMap) ois.readObject();
-
-            ois.close();
-            fis.close();
-        } catch (IOException | ClassNotFoundException e) {
+            Logger.getLogger("BooleanAND").log(Level.INFO, "Loading index...");
+            index = SegmentedIndex.open(store_path, false);
+        } catch (IOException e) {
             Logger.getLogger("BooleanAND").log(Level.SEVERE, e.toString());
         }
     }
 
     private static void initializeMappingDict(String storePath) {
-        // Reads mapping file and creates dictionaries internal id -> DOCNO and DOCNO -> internal id
+        // Reads mapping file into the internal id <-> DOCNO table
 
-        Logger.getLogger("BooleanAND").log(Level.INFO, "Initializing ID/DOCNO mapping dictionaries...");
+        Logger.getLogger("BooleanAND").log(Level.INFO, "Initializing ID/DOCNO mapping table...");
         try {
-            File mappingFile = new File(storePath + "/IDMapping.txt");
-            BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
-
-            String mappingLine = mappingReader.readLine();
-
-            while (mappingLine != null) {
-                String[] mappings = mappingLine.split(" ");
-                int internalId = Integer.parseInt(mappings[0]);
-                String docno = mappings[1];
-
-                internalIdToDocnoMap.put(internalId, docno);
-                docnoToInternalIdMap.put(docno, internalId);
-
-                mappingLine = mappingReader.readLine();
-            }
+            docnoTable = DocnoTable.read(storePath);
         } catch (IOException e) {
             Logger.getLogger("BooleanAND").log(Level.SEVERE, e.toString());
         }
@@ -192,6 +160,7 @@ public class BooleanAND {
 
         Logger.getLogger("BooleanAND").log(Level.INFO, "Initializing metadata dictionaries...");
         try {
+            metadataDict = new String[docnoTable.size()][];
             File mappingFile = new File(storePath + "/metadata.txt");
             BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
             String mappingLine = mappingReader.readLine();
@@ -204,10 +173,7 @@ public class BooleanAND {
                 mappingLine = mappingReader.readLine();
 
                 // value of dictionary is a string array of size three
-                metadataDict.put(id, new String[3]);
-                metadataDict.get(id)[0] = docno;
-                metadataDict.get(id)[1] = date;
-                metadataDict.get(id)[2] = headline;
+                metadataDict[id] = new String[]{docno, date, headline};
             }
         } catch (IOException e) {
             Logger.getLogger("BooleanAND").log(Level.SEVERE, e.toString());
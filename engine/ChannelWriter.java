@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class ChannelWriter {
+    // Buffered writer on top of a FileChannel using the byte order of the index format
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(IndexFormat.BYTE_ORDER);
+    private long position = 0;
+
+    ChannelWriter(String path) throws IOException {
+        this(path, false);
+    }
+
+    ChannelWriter(String path, boolean append) throws IOException {
+        // In append mode, writing continues at the end of an existing file and position() counts from its start
+        this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        this.position = channel.size();
+    }
+
+    public void writeByte(byte value) throws IOException {
+        ensureCapacity(1);
+        buffer.put(value);
+        position += 1;
+    }
+
+    public void writeInt(int value) throws IOException {
+        ensureCapacity(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    public void writeVByte(int value) throws IOException {
+        // Same variable-byte layout as PostingsBuffer: 7 bits per byte, low bits first, high bit set on all but the last byte
+
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+            position++;
+        }
+        buffer.put((byte) value);
+        position++;
+    }
+
+    public void writeLong(long value) throws IOException {
+        ensureCapacity(8);
+        buffer.putLong(value);
+        position += 8;
+    }
+
+    public void writeDouble(double value) throws IOException {
+        ensureCapacity(8);
+        buffer.putDouble(value);
+        position += 8;
+    }
+
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensureCapacity(1);
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+            position += chunk;
+        }
+    }
+
+    public long position() {
+        // Number of bytes written so far
+        return position;
+    }
+
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+public class CollectionInputStream extends InputStream {
+    // The decompressed bytes of a collection stored in one or more gzip files, read as a single stream in file order
+    // Files are inflated ahead of the reader by a pool of decompression threads, each file into its own ring of
+    // RING_CHUNKS buffers: the thread fills a free buffer and hands it to the reader, which gives it back once it has
+    // read it. Inflating thus overlaps with parsing and indexing. A file small enough to fit in its ring is inflated
+    // completely and frees its thread before it is read, so files are not queued all at once: a file is only queued
+    // once the reader is done with the file as many places before it as there are threads. At most one file per
+    // decompression thread is in flight, inflating or waiting to be read, and memory stays bounded by
+    // RING_CHUNKS * CHUNK_BYTES per decompression thread. Several files are inflated at the same time but always read in
+    // order, the gzip members of a single file are inflated one after the other.
+    // A file that does not end with '\n' is followed by one, so a line never spans two files
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final int RING_CHUNKS = 8;
+    private static final Chunk END_OF_FILE = new Chunk(0);
+
+    private final List<File> files;
+    private final int threads;
+    private final ExecutorService decompressors;
+    private final ArrayList<Ring> rings = new ArrayList<>();
+    private final ArrayList<Future<Void>> decompressions = new ArrayList<>();
+    private int file = 0;
+    private Chunk chunk = null;
+    private int position = 0;
+
+    CollectionInputStream(List<File> files, int threads) {
+        this.files = files;
+        this.threads = Math.max(1, Math.min(threads, files.size()));
+        this.decompressors = Executors.newFixedThreadPool(this.threads, runnable -> {
+            // Daemon threads, so a reader that fails without closing the stream does not keep the program alive
+            Thread thread = new Thread(runnable, "CollectionInputStream");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // Files are queued in order, so the file being read is always one of those being inflated
+        for (int idx = 0; idx < files.size(); idx++) {
+            rings.add(null);
+            decompressions.add(null);
+        }
+        for (int idx = 0; idx < Math.min(this.threads, files.size()); idx++) {
+            startDecompression(idx);
+        }
+    }
+
+    public static List<File> listFiles(String dataPath) {
+        // The data file itself, every .gz file of a data directory, or the files matching a glob in the last part of the
+        // path (such as data/la*.gz), in name order, which is the order of their documents
+
+        File data = new File(dataPath);
+        File[] dataFiles;
+        if (data.isDirectory()) {
+            dataFiles = data.listFiles((directory, name) -> name.endsWith(GZIP_SUFFIX));
+        } else if (!data.exists() && isGlob(data.getName())) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + data.getName());
+            File directory = data.getAbsoluteFile().getParentFile();
+            dataFiles = directory.listFiles((parent, name) -> matcher.matches(Paths.get(name)));
+        } else {
+            return List.of(data);
+        }
+        if (dataFiles == null) {
+            return List.of();
+        }
+        Arrays.sort(dataFiles);
+        return Arrays.asList(dataFiles);
+    }
+
+    private static boolean isGlob(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0 || name.indexOf('[') >= 0 || name.indexOf('{') >= 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (chunk == null || position == chunk.length) {
+            if (!nextChunk()) {
+                return -1;
+            }
+        }
+        int read = Math.min(length, chunk.length - position);
+        System.arraycopy(chunk.data, position, bytes, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public void close() {
+        decompressors.shutdownNow();
+    }
+
+    private void startDecompression(int fileIdx) {
+        Ring ring = new Ring();
+        File collectionFile = files.get(fileIdx);
+        rings.set(fileIdx, ring);
+        decompressions.set(fileIdx, decompressors.submit(() -> decompress(collectionFile, ring)));
+    }
+
+    private boolean nextChunk() throws IOException {
+        // Give the chunk that was read back to its ring and take the next one, moving on to the next file at the end of
+        // a file. Returns false at the end of the last file
+
+        try {
+            while (file < files.size()) {
+                Ring ring = rings.get(file);
+                if (chunk != null) {
+                    ring.free.put(chunk);
+                    chunk = null;
+                }
+                Chunk next = ring.filled.take();
+                if (next != END_OF_FILE) {
+                    chunk = next;
+                    position = 0;
+                    return true;
+                }
+
+                // Rethrow the error that ended the file early, if any
+                decompressions.get(file).get();
+                rings.set(file, null);
+                if (file + threads < files.size()) {
+                    startDecompression(file + threads);
+                }
+                file++;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading " + files.get(file));
+        } catch (ExecutionException e) {
+            throw new IOException("Could not decompress " + files.get(file), e.getCause());
+        }
+    }
+
+    private static Void decompress(File file, Ring ring) throws IOException, InterruptedException {
+        // Inflate the file into the chunks of its ring, the chunks are only allocated once the file is inflated
+
+        try (InputStream input = new GZIPInputStream(new FileInputStream(file), CHUNK_BYTES)) {
+            for (int idx = 0; idx < RING_CHUNKS; idx++) {
+                ring.free.add(new Chunk(CHUNK_BYTES));
+            }
+            byte lastByte = '\n';
+            Chunk chunk = ring.free.take();
+            while (fill(input, chunk) > 0) {
+                lastByte = chunk.data[chunk.length - 1];
+                ring.filled.put(chunk);
+                chunk = ring.free.take();
+            }
+            if (lastByte != '\n') {
+                chunk.data[0] = '\n';
+                chunk.length = 1;
+                ring.filled.put(chunk);
+            }
+        } finally {
+            // There is always room for the end marker, the ring never has more chunks than RING_CHUNKS
+            ring.filled.offer(END_OF_FILE);
+        }
+        return null;
+    }
+
+    private static int fill(InputStream input, Chunk chunk) throws IOException {
+        // Read until the chunk is full or the file ends, an inflater returns little data per read
+
+        chunk.length = 0;
+        while (chunk.length < chunk.data.length) {
+            int read = input.read(chunk.data, chunk.length, chunk.data.length - chunk.length);
+            if (read < 0) {
+                break;
+            }
+            chunk.length += read;
+        }
+        return chunk.length;
+    }
+
+    private static final class Ring {
+        private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(RING_CHUNKS + 1);
+        private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(RING_CHUNKS);
+    }
+
+    private static final class Chunk {
+        private final byte[] data;
+        private int length = 0;
+
+        private Chunk(int capacity) {
+            this.data = new byte[capacity];
+        }
+    }
+}
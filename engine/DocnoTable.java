@@ -0,0 +1,103 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class DocnoTable {
+    // DOCNOs indexed directly by internal id, replacing the internal id -> DOCNO and DOCNO -> internal id hash maps
+    // DOCNO lookups binary search a permutation of the internal ids sorted by DOCNO, so no boxed keys are kept around
+    private static final String MAPPING_FILENAME = "/IDMapping.txt";
+
+    private final String[] docnos;
+    private final int[] idsByDocno;
+
+    private DocnoTable(String[] docnos) {
+        this.docnos = docnos;
+        this.idsByDocno = sortIdsByDocno(docnos);
+    }
+
+    public static DocnoTable read(String storePath) throws IOException {
+        // Reads the mapping file written by the MetadataEngine, one "internalId DOCNO" line per document
+
+        String[] docnos = new String[1024];
+        int size = 0;
+
+        BufferedReader mappingReader = new BufferedReader(new FileReader(new File(storePath + MAPPING_FILENAME)));
+        String mappingLine = mappingReader.readLine();
+        while (mappingLine != null) {
+            int separator = mappingLine.indexOf(' ');
+            int internalId = Integer.parseInt(mappingLine.substring(0, separator));
+            if (internalId >= docnos.length) {
+                docnos = Arrays.copyOf(docnos, Math.max(docnos.length * 2, internalId + 1));
+            }
+            docnos[internalId] = mappingLine.substring(separator + 1);
+            size = Math.max(size, internalId + 1);
+            mappingLine = mappingReader.readLine();
+        }
+        mappingReader.close();
+
+        return new DocnoTable(Arrays.copyOf(docnos, size));
+    }
+
+    public String getDocno(int internalId) {
+        return docnos[internalId];
+    }
+
+    public int getInternalId(String docno) {
+        // Internal id of a DOCNO, or -1 if the DOCNO is not in the collection
+
+        int low = 0;
+        int high = idsByDocno.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = docnos[idsByDocno[middle]].compareTo(docno);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return idsByDocno[middle];
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return docnos.length;
+    }
+
+    private static int[] sortIdsByDocno(String[] docnos) {
+        // Merge sort the internal ids by DOCNO directly on int arrays, ids without a DOCNO are left out
+
+        int count = 0;
+        int[] ids = new int[docnos.length];
+        for (int internalId = 0; internalId < docnos.length; internalId++) {
+            if (docnos[internalId] != null) {
+                ids[count++] = internalId;
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+
+        int[] scratch = new int[count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int left = start;
+                int right = middle;
+                for (int idx = start; idx < end; idx++) {
+                    if (right >= end || (left < middle && docnos[ids[left]].compareTo(docnos[ids[right]]) <= 0)) {
+                        scratch[idx] = ids[left++];
+                    } else {
+                        scratch[idx] = ids[right++];
+                    }
+                }
+            }
+            int[] swap = ids;
+            ids = scratch;
+            scratch = swap;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,22 @@
+import java.util.ArrayList;
+
+public class DocumentBatch {
+    // Marker put on a queue to tell the consuming stage that the collection has been fully read
+    static final DocumentBatch END = new DocumentBatch(-1);
+
+    // Documents of a batch have consecutive internal ids, starting at firstInternalId
+    final int firstInternalId;
+    final ArrayList<ParsedDocument> documents = new ArrayList<>();
+
+    DocumentBatch(int firstInternalId) {
+        this.firstInternalId = firstInternalId;
+    }
+
+    public void addDocument(ParsedDocument document) {
+        documents.add(document);
+    }
+
+    public int size() {
+        return documents.size();
+    }
+}
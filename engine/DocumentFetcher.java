@@ -1,15 +1,12 @@
 import java.io.*;
 import java.time.Month;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class DocumentFetcher {
-    private static HashMap<Integer, String> internalIdToDocnoMap = new HashMap<>();
-    private static HashMap<String, Integer> docnoToInternalIdMap = new HashMap<>();
-    private static HashMap<Integer, String[]> metadataDict = new HashMap<>();
+    private static DocnoTable docnoTable;
+    private static String[][] metadataDict;
     private static final String DOCNO = "docno";
 
     public static void main(String[] args) {
@@ -26,39 +23,25 @@ public class DocumentFetcher {
         ArrayList<String> document;
 
         if (identifierType.equals(DOCNO)) {
-            int internalId = docnoToInternalIdMap.get(identifier);
-            metadata = metadataDict.get(internalId);
-            document = getRawDocument(STORE_PATH, identifier, metadata[1]);
+            int internalId = docnoTable.getInternalId(identifier);
+            metadata = metadataDict[internalId];
+            document = getRawDocument(STORE_PATH, internalId);
             outputDocument(identifier, internalId, metadata[1], metadata[2], document);
         } else {
             int id = Integer.parseInt(identifier);
-            String docno = internalIdToDocnoMap.get(id);
-            metadata = metadataDict.get(id);
-            document = getRawDocument(STORE_PATH, docno, metadata[1]);
+            String docno = docnoTable.getDocno(id);
+            metadata = metadataDict[id];
+            document = getRawDocument(STORE_PATH, id);
             outputDocument(docno, id, metadata[1], metadata[2], document);
         }
     }
 
     private static void initializeMappingDict(String storePath) {
-        // Reads mapping file and creates dictionaries internal id -> DOCNO and DOCNO -> internal id
-        try {
-            File mappingFile = new File(storePath + "/IDMapping.txt");
-            BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
-
-            String mappingLine = mappingReader.readLine();
-
-            while (mappingLine != null) {
-                String[] mappings = mappingLine.split(" ");
-                int internalId = Integer.parseInt(mappings[0]);
-                String docno = mappings[1];
+        // Reads mapping file into the internal id <-> DOCNO table
 
-                internalIdToDocnoMap.put(internalId, docno);
-                docnoToInternalIdMap.put(docno, internalId);
-
-                mappingLine = mappingReader.readLine();
-            }
-            System.out.println("Created internalIdToDocnoMap with " + internalIdToDocnoMap.size() + " document keys");
-            System.out.println("Created docnoToInternalIdMap with " + docnoToInternalIdMap.size() + " document keys");
+        try {
+            docnoTable = DocnoTable.read(storePath);
+            System.out.println("Created docnoTable with " + docnoTable.size() + " documents");
         } catch (IOException e) {
             Logger.getLogger("DocumentFetcher").log(Level.SEVERE, e.toString());
         }
@@ -68,6 +51,7 @@ public class DocumentFetcher {
         // Reads metadata file and creates dictionary internal id -> metadata
 
         try {
+            metadataDict = new String[docnoTable.size()][];
             File mappingFile = new File(storePath + "/metadata.txt");
             BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
             String mappingLine = mappingReader.readLine();
@@ -80,33 +64,20 @@ public class DocumentFetcher {
                 mappingLine = mappingReader.readLine();
 
                 // value of dictionary is a string array of size three
-                metadataDict.put(id, new String[3]);
-                metadataDict.get(id)[0] = docno;
-                metadataDict.get(id)[1] = date;
-                metadataDict.get(id)[2] = headline;
+                metadataDict[id] = new String[]{docno, date, headline};
             }
-            System.out.println("Created metadataDict with " + metadataDict.size() + " document keys");
+            System.out.println("Created metadataDict with " + metadataDict.length + " document keys");
         } catch (IOException e) {
             Logger.getLogger("DocumentFetcher").log(Level.SEVERE, e.toString());
         }
     }
 
-    private static ArrayList<String> getRawDocument(String storePath, String docno, String date) {
-        // fetches the raw document stored in file system to be outputted
+    private static ArrayList<String> getRawDocument(String storePath, int internalId) {
+        // fetches the raw document from the document store to be outputted
 
         ArrayList<String> rawDocument = new ArrayList<>();
         try {
-            String month = date.substring(0, 2);
-            String day = date.substring(2, 4);
-            String year = date.substring(4, 6);
-            File rawDocumentFile = new File(storePath + "/" + year + "/" + month + "/" + day + "/" + docno + ".txt");
-            BufferedReader rawDocumentReader = new BufferedReader(new FileReader(rawDocumentFile));
-            String documentLine = rawDocumentReader.readLine();
-
-            while (documentLine != null) {
-                rawDocument.add(documentLine);
-                documentLine = rawDocumentReader.readLine();
-            }
+            rawDocument = DocumentStore.open(storePath).getDocument(internalId);
         } catch (IOException e) {
             Logger.getLogger("DocumentFetcher").log(Level.SEVERE, e.toString());
         }
@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class DocumentParser {
+    // Streams the documents of an SGML collection in the LATimes format out of its decompressed bytes
+    // The bytes are read once, in large chunks, and each line is matched against the tags as bytes, so no String is
+    // created per line. As in the line-based reader this replaces, tags are only recognised on lines of their own:
+    //  - <DOC> and </DOC> delimit a document, bytes outside of a document are skipped
+    //  - a line starting with <DOCNO> gives the DOCNO of the document, which is kept until the next such line
+    //  - the lines between <HEADLINE>, <GRAPHIC> or <TEXT> and its closing tag, except the <P> and </P> lines, are the
+    //    text of that field. A field may occur several times, and a document without a closing tag ends its field
+    // Lines end with '\n' or "\r\n", the collection is read as UTF-8
+    private static final byte[] DOC_START_TAG = bytes("<DOC>");
+    private static final byte[] DOC_END_TAG = bytes("</DOC>");
+    private static final byte[] DOCNO_START_TAG = bytes("<DOCNO>");
+    private static final byte[] DOCNO_END_TAG = bytes("</DOCNO>");
+    private static final byte[] PARAGRAPH_START_TAG = bytes("<P>");
+    private static final byte[] PARAGRAPH_END_TAG = bytes("</P>");
+    private static final byte[][] FIELD_START_TAGS = {bytes("<HEADLINE>"), bytes("<GRAPHIC>"), bytes("<TEXT>")};
+    private static final byte[][] FIELD_END_TAGS = {bytes("</HEADLINE>"), bytes("</GRAPHIC>"), bytes("</TEXT>")};
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final InputStream input;
+    private byte[] buffer = new byte[BUFFER_BYTES];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+
+    // The document being read: its lines so far, and the fields it is inside of
+    private byte[] document = new byte[BUFFER_BYTES];
+    private int documentLength = 0;
+    private boolean inDocument = false;
+    private final boolean[] openFields = new boolean[ParsedDocument.FIELD_COUNT];
+    private final IntArrayList[] fieldSpans = new IntArrayList[ParsedDocument.FIELD_COUNT];
+    private String docno = null;
+
+    // Bounds of the current line in the buffer, without its line terminator
+    private int lineStart;
+    private int lineEnd;
+
+    DocumentParser(InputStream input) {
+        this.input = input;
+        for (int field = 0; field < ParsedDocument.FIELD_COUNT; field++) {
+            fieldSpans[field] = new IntArrayList();
+        }
+    }
+
+    public ParsedDocument next() throws IOException {
+        // Read up to the end of the next document and return it, null at the end of the collection
+
+        while (nextLine()) {
+            if (isLine(DOC_START_TAG)) {
+                // A new document starts, dropping a document that was never closed
+                startDocument();
+            }
+            if (startsLine(DOCNO_START_TAG)) {
+                docno = parseDocno();
+            }
+            if (!inDocument) {
+                continue;
+            }
+
+            int spanStart = documentLength;
+            appendLine();
+            if (isLine(DOC_END_TAG)) {
+                inDocument = false;
+                return buildDocument();
+            }
+
+            boolean paragraphTag = isLine(PARAGRAPH_START_TAG) || isLine(PARAGRAPH_END_TAG);
+            for (int field = 0; field < ParsedDocument.FIELD_COUNT; field++) {
+                if (isLine(FIELD_END_TAGS[field])) {
+                    openFields[field] = false;
+                } else if (openFields[field] && !paragraphTag) {
+                    fieldSpans[field].add(spanStart);
+                    fieldSpans[field].add(spanStart + (lineEnd - lineStart));
+                }
+            }
+            // The start tag of a field is itself text of the other fields the line is inside of
+            for (int field = 0; field < ParsedDocument.FIELD_COUNT; field++) {
+                if (isLine(FIELD_START_TAGS[field])) {
+                    openFields[field] = true;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void startDocument() {
+        inDocument = true;
+        documentLength = 0;
+        for (int field = 0; field < ParsedDocument.FIELD_COUNT; field++) {
+            openFields[field] = false;
+            fieldSpans[field].clear();
+        }
+    }
+
+    private ParsedDocument buildDocument() {
+        int[][] spans = new int[ParsedDocument.FIELD_COUNT][];
+        for (int field = 0; field < ParsedDocument.FIELD_COUNT; field++) {
+            spans[field] = fieldSpans[field].toArray();
+        }
+        return new ParsedDocument(Arrays.copyOf(document, documentLength), docno, spans);
+    }
+
+    private void appendLine() {
+        // Copy the line and a '\n' to the document
+
+        int length = lineEnd - lineStart;
+        if (documentLength + length + 1 > document.length) {
+            document = Arrays.copyOf(document, Math.max(documentLength + length + 1, document.length * 2));
+        }
+        System.arraycopy(buffer, lineStart, document, documentLength, length);
+        documentLength += length;
+        document[documentLength++] = '\n';
+    }
+
+    private String parseDocno() {
+        // Text between <DOCNO> and </DOCNO>, trimmed
+
+        int start = lineStart + DOCNO_START_TAG.length;
+        int end = lineEnd;
+        if (end - start >= DOCNO_END_TAG.length
+                && Arrays.equals(buffer, end - DOCNO_END_TAG.length, end, DOCNO_END_TAG, 0, DOCNO_END_TAG.length)) {
+            end -= DOCNO_END_TAG.length;
+        }
+        return new String(buffer, start, end - start, StandardCharsets.UTF_8).trim();
+    }
+
+    private boolean nextLine() throws IOException {
+        // Find the next line in the buffer, reading more of the input when the line does not end in it
+        // Returns false once every line has been read
+
+        int scanFrom = position;
+        while (true) {
+            for (int idx = scanFrom; idx < limit; idx++) {
+                if (buffer[idx] == '\n') {
+                    setLine(position, idx);
+                    position = idx + 1;
+                    return true;
+                }
+            }
+            if (endOfInput) {
+                // The last line may have no line terminator
+                if (position == limit) {
+                    return false;
+                }
+                setLine(position, limit);
+                position = limit;
+                return true;
+            }
+            scanFrom = limit - position;
+            fill();
+        }
+    }
+
+    private void setLine(int start, int end) {
+        lineStart = start;
+        lineEnd = end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private void fill() throws IOException {
+        // Move the unread bytes to the front of the buffer, growing it for a line longer than the buffer, and read more
+
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        } else {
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+        }
+        position = 0;
+        limit = remaining;
+
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            endOfInput = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private boolean isLine(byte[] tag) {
+        return lineEnd - lineStart == tag.length && Arrays.equals(buffer, lineStart, lineEnd, tag, 0, tag.length);
+    }
+
+    private boolean startsLine(byte[] tag) {
+        return lineEnd - lineStart >= tag.length && Arrays.equals(buffer, lineStart, lineStart + tag.length, tag, 0, tag.length);
+    }
+
+    private static byte[] bytes(String tag) {
+        return tag.getBytes(StandardCharsets.US_ASCII);
+    }
+}
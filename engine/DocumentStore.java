@@ -0,0 +1,126 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class DocumentStore {
+    // Raw documents packed into a few large files, written by the SnippetEngine. All numbers are little-endian.
+    //
+    // documents/documents-N.bin  Deflate-compressed blocks of up to BLOCK_DOCUMENTS documents (or BLOCK_BYTES bytes):
+    //                              uncompressed length (int), compressed length (int), compressed bytes
+    //                              uncompressed, a block is (byte length (int), UTF-8 bytes) per document, where the
+    //                              bytes are the lines of the document, each one followed by '\n'
+    // documents/documents.idx    one record per internal id: file number (int), block offset (long), position in block (int)
+    //
+    // Reading a document costs one positional read and the decompression of a single block
+    static final String DIRECTORY = "/documents";
+    static final String INDEX_FILENAME = "/documents.idx";
+    static final String BLOCKS_PREFIX = "/documents-";
+    static final String BLOCKS_SUFFIX = ".bin";
+    static final int RECORD_BYTES = 4 + 8 + 4;
+    static final int BLOCK_HEADER_BYTES = 4 + 4;
+    static final int BLOCK_DOCUMENTS = 8;
+    static final int BLOCK_BYTES = 32 * 1024;
+    static final long MAX_FILE_BYTES = 1L << 30;
+
+    private final String storePath;
+    private final ByteBuffer records;
+    private final ArrayList<FileChannel> blockFiles = new ArrayList<>();
+
+    private DocumentStore(String storePath) throws IOException {
+        this.storePath = storePath;
+        try (FileChannel channel = FileChannel.open(Paths.get(storePath + DIRECTORY + INDEX_FILENAME), StandardOpenOption.READ)) {
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(IndexFormat.BYTE_ORDER);
+        }
+    }
+
+    public static DocumentStore open(String storePath) throws IOException {
+        return new DocumentStore(storePath);
+    }
+
+    public ArrayList<String> getDocument(int internalId) throws IOException {
+        // Decompress the block holding the document and split the document into its lines
+
+        int file = records.getInt(internalId * RECORD_BYTES);
+        long offset = records.getLong(internalId * RECORD_BYTES + 4);
+        int position = records.getInt(internalId * RECORD_BYTES + 12);
+        FileChannel blocks = blockFile(file);
+
+        ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_BYTES).order(IndexFormat.BYTE_ORDER);
+        readFully(blocks, header, offset);
+        int uncompressedLength = header.getInt(0);
+        int compressedLength = header.getInt(4);
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        readFully(blocks, compressed, offset + BLOCK_HEADER_BYTES);
+
+        byte[] block = new byte[uncompressedLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            inflater.inflate(block);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt document block in " + storePath + DIRECTORY, e);
+        } finally {
+            inflater.end();
+        }
+
+        // Skip the documents stored before this one in the block
+        ByteBuffer documents = ByteBuffer.wrap(block).order(IndexFormat.BYTE_ORDER);
+        for (int idx = 0; idx < position; idx++) {
+            documents.position(documents.position() + 4 + documents.getInt(documents.position()));
+        }
+        int length = documents.getInt();
+        String text = new String(block, documents.position(), length, StandardCharsets.UTF_8);
+
+        ArrayList<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        for (int lineEnd = text.indexOf('\n'); lineEnd >= 0; lineEnd = text.indexOf('\n', lineStart)) {
+            lines.add(text.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+        }
+        return lines;
+    }
+
+    public int size() {
+        return records.capacity() / RECORD_BYTES;
+    }
+
+    private synchronized FileChannel blockFile(int file) throws IOException {
+        // Block files are opened the first time one of their documents is read
+
+        while (blockFiles.size() <= file) {
+            blockFiles.add(null);
+        }
+        if (blockFiles.get(file) == null) {
+            blockFiles.set(file, FileChannel.open(Paths.get(blockFilePath(storePath, file)), StandardOpenOption.READ));
+        }
+        return blockFiles.get(file);
+    }
+
+    static String blockFilePath(String storePath, int file) {
+        return storePath + DIRECTORY + BLOCKS_PREFIX + file + BLOCKS_SUFFIX;
+    }
+
+    static int countBlockFiles(String storePath) {
+        int files = 0;
+        while (new File(blockFilePath(storePath, files)).exists()) {
+            files++;
+        }
+        return files;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of document block");
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+public class ExhaustiveEvaluator implements QueryEvaluator {
+    // Term-at-a-time evaluation: the score of every posting of the term of every query token is added to an
+    // accumulator, then every scored document is collected
+
+    @Override
+    public void evaluate(RankedQuery query, TopDocsCollector collector) {
+        // The scores are added up in the buffers of the thread, laid out for the number of postings of the query
+        long postingCount = 0;
+        for (int term : query.tokenTerms) {
+            postingCount += query.index.documentFrequency(query.terms[term]);
+        }
+        ScoreAccumulator accumulator = ScoreAccumulator.forThread();
+        accumulator.reset(query.index.getDocumentCount(), postingCount);
+
+        for (int term : query.tokenTerms) {
+            // Fetch postings list from inverted index, decoding one posting at a time
+            PostingsIterator postings = query.index.postings(query.terms[term]);
+            for (int docId = postings.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postings.nextDoc()) {
+                accumulator.addTo(docId, query.termScore(term, docId, postings.frequency()));
+            }
+            query.addDecodedPostings(postings.documentFrequency());
+        }
+
+        // Keep only the documents matching every phrase
+        accumulator.collect(query, collector);
+    }
+}
@@ -1,191 +1,190 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 public class IndexEngine {
-    private static final String DOCNO_START_TAG = "<DOCNO>";
-    private static final String DOC_START_TAG = "<DOC>";
-    private static final String DOC_END_TAG = "</DOC>";
-    private static final String HEADLINE_START_TAG = "<HEADLINE>";
-    private static final String HEADLINE_END_TAG = "</HEADLINE>";
-    private static final String GRAPHIC_START_TAG = "<GRAPHIC>";
-    private static final String GRAPHIC_END_TAG = "</GRAPHIC>";
-    private static final String TEXT_START_TAG = "<TEXT>";
-    private static final String TEXT_END_TAG = "</TEXT>";
+    private static final String MEMORY_BUDGET_OPTION = "--memory-budget-mb=";
+    private static final long DEFAULT_MEMORY_BUDGET_MB = 256;
+    private static final String THREADS_OPTION = "--threads=";
+    private static final String DECOMPRESSION_THREADS_OPTION = "--decompression-threads=";
+    private static final String CODEC_OPTION = "--codec=";
+    private static final String VBYTE_CODEC = "vbyte";
+    private static final String BLOCK_CODEC = "block";
+    private static final String APPEND_OPTION = "--append";
+    private static final String POSITIONS_OPTION = "--positions";
+    private static final String VARIANTS_OPTION = "--variants=";
+    private static final String UNSTEMMED_VARIANT = "unstemmed";
+    private static final String STEMMED_VARIANT = "stemmed";
+    private static final String BOTH_VARIANTS = "both";
+    private static final String SHARDS_OPTION = "--shards=";
+    private static final String SHARDS_DIRECTORY = "/shards";
+    private static final String SHARD_PREFIX = "/shard-";
 
     public static void main(String[] args) {
         validateInputs(args);
 
         final String DATA_PATH = args[0];
         final String STORE_PATH = args[1];
-        final boolean STEM = false;
+        final long MEMORY_BUDGET_MB = Long.parseLong(getOption(args, MEMORY_BUDGET_OPTION, String.valueOf(DEFAULT_MEMORY_BUDGET_MB)));
+        final byte CODEC = getOption(args, CODEC_OPTION, BLOCK_CODEC).equals(VBYTE_CODEC) ? IndexFormat.VBYTE_CODEC : IndexFormat.BLOCK_CODEC;
+        final int THREADS = Integer.parseInt(getOption(args, THREADS_OPTION, String.valueOf(Runtime.getRuntime().availableProcessors())));
+        final List<File> DATA_FILES = CollectionInputStream.listFiles(DATA_PATH);
+        final int DECOMPRESSION_THREADS = Integer.parseInt(getOption(args, DECOMPRESSION_THREADS_OPTION,
+                String.valueOf(Math.min(DATA_FILES.size(), Runtime.getRuntime().availableProcessors()))));
+        final int SHARDS = Integer.parseInt(getOption(args, SHARDS_OPTION,
+                String.valueOf(Math.min(DATA_FILES.size(), Runtime.getRuntime().availableProcessors()))));
+        final boolean APPEND = hasFlag(args, APPEND_OPTION);
+        final boolean POSITIONAL = hasFlag(args, POSITIONS_OPTION);
+        final String VARIANTS = getOption(args, VARIANTS_OPTION, UNSTEMMED_VARIANT);
 
         File storeDirectory = new File(STORE_PATH);
         storeDirectory.mkdirs();
         Logger.getLogger("IndexEngine").log(Level.INFO, "Creating storage directory at " + STORE_PATH);
 
-        // Initialize engine instances
-        SnippetEngine snippetEngine = new SnippetEngine(STORE_PATH);
-        MetadataEngine metadataEngine = new MetadataEngine(STORE_PATH);
+        // Only one IndexEngine may add or merge segments of a store, the lock is held until the program exits
+        FileLock writeLock = acquireWriteLock(STORE_PATH);
 
-        ArrayList<Integer> documentLengths = new ArrayList<>();
-        Map<String, Integer> termToIdLexicon = new HashMap<>();
-        Map<Integer, String> idToTermLexicon = new HashMap<>();
-        Map<Integer, ArrayList<Integer>> invertedIndex = new HashMap<>();
-
-        try {
-            long start = System.currentTimeMillis();
-
-            InputStream fileStream = new FileInputStream(DATA_PATH);
-            InputStream gzipStream = new GZIPInputStream(fileStream);
-            Reader decoder = new InputStreamReader(gzipStream);
-            BufferedReader bufferedReader = new BufferedReader(decoder);
-
-            ArrayList<String> documentArray = new ArrayList<>();
-
-            // Since every document has a DOCNO, we extract it from the document while we are streaming it
-            String docno = null;
-            String documentLine = bufferedReader.readLine();
-            int internalId = 0;
-
-            Logger.getLogger("IndexEngine").log(Level.INFO, "Saving documents one-by-one to FS and writing to mapping/metadata files...");
-
-            // Stream latimes.gz one document at a time
-            while (documentLine != null) {
-                if (documentLine.equals(DOC_START_TAG)) {
-                    // If we detect a document start tag, we clear the previous document and begin reading in the next document
-                    documentArray.clear();
-                } else if (documentLine.startsWith(DOCNO_START_TAG)) {
-                    docno = processDocnoLine(documentLine);
-                }
-
-                documentArray.add(documentLine);
+        // A new store gets the variants asked for, documents appended to a store go into every variant it already has
+        VariantManifest variants = readVariants(STORE_PATH);
+        if (variants.isEmpty()) {
+            variants.addVariant(VARIANTS.equals(STEMMED_VARIANT));
+            if (VARIANTS.equals(BOTH_VARIANTS)) {
+                variants.addVariant(true);
+            }
+        }
 
-                if (documentLine.equals(DOC_END_TAG)) {
-                    // At this stage, we know we have the entire document in the ArrayList and can begin to process it
-                    metadataEngine.saveMetadata(documentArray, docno, internalId, getDateByDocno(docno));
-                    snippetEngine.saveDocument(documentArray, docno, getDateByDocno(docno));
+        // New documents go into a new segment of every variant, numbered after the documents already in the store
+        final int DOC_BASE = readDocumentCount(STORE_PATH, variants);
 
-                    String documentText = getDocumentText(documentArray);
+        // A collection split into several data files is indexed as shards, each into a store of its own, and the shards
+        // are then combined into the store in data file order. Threads and memory are shared by the shards
+        List<List<File>> shards = splitShards(DATA_FILES, SHARDS);
+        IndexingPipeline pipeline = new IndexingPipeline(CODEC, POSITIONAL, Math.max(1, THREADS / shards.size()),
+                Math.max(1, DECOMPRESSION_THREADS / shards.size()), MEMORY_BUDGET_MB * 1024 * 1024 / shards.size());
+        // The merges of the variants run next to the shards
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size() + 2);
+        boolean failed = false;
 
-                    ArrayList<String> tokens;
+        try {
+            long start = System.currentTimeMillis();
 
-                    if(STEM) {
-                        tokens = DocumentUtils.tokenizeAndStem(documentText);
-                    } else {
-                        tokens = DocumentUtils.tokenize(documentText);
+            // The segments left by earlier appends are merged in the background while the new documents are indexed. The
+            // new segments are only published once the merges are done, and are merged in turn by the next append
+            ArrayList<Future<Void>> merges = new ArrayList<>();
+            if (APPEND) {
+                for (boolean stemmed : new boolean[]{false, true}) {
+                    if (variants.hasVariant(stemmed)) {
+                        String variantPath = variants.variantPath(stemmed);
+                        merges.add(executor.submit(() -> {
+                            SegmentMerger.mergeSegments(variantPath);
+                            return null;
+                        }));
                     }
-
-                    documentLengths.add(tokens.size());
-                    ArrayList<Integer> tokenIds = convertTokensToIds(tokens, termToIdLexicon, idToTermLexicon);
-                    Map<Integer, Integer> wordCounts = countWords(tokenIds);
-                    addPostings(wordCounts, internalId, invertedIndex);
-                    internalId++;
                 }
-
-                documentLine = bufferedReader.readLine();
             }
 
-            Logger.getLogger("IndexEngine").log(Level.INFO, "Serializing lexicon dictionaries...");
-            writeObjectToFS(termToIdLexicon,STORE_PATH + "/termToIdLexicon.ser");
-            writeObjectToFS(idToTermLexicon,STORE_PATH + "/idToTermLexicon.ser");
-
-            Logger.getLogger("IndexEngine").log(Level.INFO, "Serializing document lengths array...");
-            writeObjectToFS(documentLengths,STORE_PATH + "/documentLengths.ser");
-
-            Logger.getLogger("IndexEngine").log(Level.INFO, "Serializing inverted index...");
-            writeObjectToFS(invertedIndex,STORE_PATH + "/invertedIndex.ser");
+            int documentCount;
+            if (shards.size() == 1) {
+                documentCount = pipeline.index(DATA_FILES, STORE_PATH, variants, DOC_BASE, APPEND, merges);
+            } else {
+                documentCount = indexShards(executor, pipeline, shards, STORE_PATH, variants, DOC_BASE, APPEND, merges);
+            }
 
-            metadataEngine.closeWriters();
+            if (documentCount > 0) {
+                variants.write();
+            } else {
+                Logger.getLogger("IndexEngine").log(Level.INFO, "No new documents found, the index is unchanged.");
+            }
 
             long finish = System.currentTimeMillis();
             long timeElapsed = finish - start;
             Logger.getLogger("IndexEngine").log(Level.SEVERE, "Time taken: " + timeElapsed + " milliseconds");
 
 
-            Logger.getLogger("IndexEngine").log(Level.INFO, "Finished indexing documents and metadata/mappings! Indexed " + internalId + " documents.");
-        } catch (IOException e) {
+            Logger.getLogger("IndexEngine").log(Level.INFO, "Finished indexing documents and metadata/mappings! Indexed " + documentCount + " documents.");
+        } catch (IOException | InterruptedException | ExecutionException e) {
             Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+            failed = true;
+        } finally {
+            // A merge still running after a failure is finished before the write lock is released
+            executor.shutdownNow();
+            awaitTermination(executor);
+            releaseWriteLock(writeLock);
         }
-    }
-
-    private static void writeObjectToFS(Object objToSave, String path) {
-        // Write an object to the FS at the given path
-
-        try {
-            FileOutputStream fos = new FileOutputStream(path);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
-            oos.writeObject(objToSave);
 
-            oos.close();
-            fos.close();
-        } catch(IOException e) {
-            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+        // A failed build exits with an error once the write lock is released
+        if (failed) {
+            System.exit(1);
         }
     }
 
-    private static String getDocumentText(ArrayList<String> documentArray) {
-        // Gets the text within a document for the HEADLINE, TEXT, GRAPHIC tags
-
-        StringBuffer documentText = new StringBuffer();
-
-        documentText.append(DocumentUtils.extractTextByTag(documentArray, HEADLINE_START_TAG, HEADLINE_END_TAG));
-        documentText.append(" ");
-        documentText.append(DocumentUtils.extractTextByTag(documentArray, GRAPHIC_START_TAG, GRAPHIC_END_TAG));
-        documentText.append(" ");
-        documentText.append(DocumentUtils.extractTextByTag(documentArray, TEXT_START_TAG, TEXT_END_TAG));
-
-        return documentText.toString();
-    }
-
-    private static ArrayList<Integer> convertTokensToIds(ArrayList<String> tokens, Map<String, Integer> termToIdLexicon, Map<Integer, String> idToTermLexicon) {
-        // Converts tokens to token ids and updates the lexicon dictionaries in the process
-
-        ArrayList<Integer> tokenIds = new ArrayList<>();
-        for (String token : tokens) {
-            if (!termToIdLexicon.containsKey(token)) {
-                int id = termToIdLexicon.size();
-                termToIdLexicon.put(token, id);
-                idToTermLexicon.put(id, token);
+    private static int indexShards(ExecutorService executor, IndexingPipeline pipeline, List<List<File>> shards, String storePath,
+                                   VariantManifest variants, int docBase, boolean append, List<Future<Void>> merges)
+            throws IOException, InterruptedException, ExecutionException {
+        // Index every shard concurrently into a store of its own, with internal ids from 0, then combine the shards into
+        // the store once the merges of its segments are done. Returns the number of documents indexed
+
+        File shardsDirectory = new File(storePath + SHARDS_DIRECTORY);
+        ShardMerger.deleteDirectory(shardsDirectory);
+        Logger.getLogger("IndexEngine").log(Level.INFO, "Indexing " + shards.size() + " shards concurrently...");
+
+        ArrayList<String> shardPaths = new ArrayList<>();
+        ArrayList<Future<Integer>> shardIndexes = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            String shardPath = shardsDirectory.getPath() + SHARD_PREFIX + shard;
+            new File(shardPath).mkdirs();
+            VariantManifest shardVariants = VariantManifest.read(shardPath);
+            for (boolean stemmed : new boolean[]{false, true}) {
+                if (variants.hasVariant(stemmed)) {
+                    shardVariants.addVariant(stemmed);
+                }
             }
-            tokenIds.add(termToIdLexicon.get(token));
+            shardVariants.write();
+
+            List<File> shardFiles = shards.get(shard);
+            shardPaths.add(shardPath);
+            shardIndexes.add(executor.submit(() -> pipeline.index(shardFiles, shardPath, shardVariants, 0, false, new ArrayList<>())));
+        }
+        for (Future<Integer> shardIndex : shardIndexes) {
+            shardIndex.get();
         }
-        return tokenIds;
+        for (Future<Void> merge : merges) {
+            merge.get();
+        }
+
+        int documentCount = ShardMerger.mergeShards(shardPaths, storePath, variants, docBase, append);
+        ShardMerger.deleteDirectory(shardsDirectory);
+        return documentCount;
     }
 
-    private static Map<Integer, Integer> countWords(ArrayList<Integer> tokenIds) {
-        // Given a list of tokens, count the number of occurrences for the tokens that exist
+    private static List<List<File>> splitShards(List<File> dataFiles, int shards) {
+        // Split the data files into at most the given number of contiguous groups of about as many files each
 
-        Map<Integer, Integer> wordCounts = new HashMap<>();
-        for (int id : tokenIds) {
-            if (wordCounts.containsKey(id)) {
-                wordCounts.put(id, wordCounts.get(id) + 1);
-            } else {
-                wordCounts.put(id, 1);
-            }
+        int shardCount = Math.max(1, Math.min(shards, dataFiles.size()));
+        List<List<File>> shardFiles = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardFiles.add(dataFiles.subList(shard * dataFiles.size() / shardCount, (shard + 1) * dataFiles.size() / shardCount));
         }
-
-        return wordCounts;
+        return shardFiles;
     }
 
-    private static void addPostings(Map<Integer, Integer> wordCounts, int internalId, Map<Integer, ArrayList<Integer>> invIndex) {
-        // Update the inverted index
-        // Add the document internal id/number of occurrences of the given token for the posting mapped from the token id
+    static void getDocumentText(ParsedDocument document, StringBuilder documentText) {
+        // Gets the text within a document for the HEADLINE, TEXT, GRAPHIC tags into a reused builder
 
-        for (Integer termId : wordCounts.keySet()) {
-            int count = wordCounts.get(termId);
-            if (!invIndex.containsKey(termId)) {
-                invIndex.put(termId, new ArrayList<>());
-            }
-            ArrayList<Integer> postings = invIndex.get(termId);
-            postings.add(internalId);
-            postings.add(count);
-        }
+        documentText.setLength(0);
+        document.appendField(ParsedDocument.HEADLINE, documentText);
+        documentText.append(' ');
+        document.appendField(ParsedDocument.GRAPHIC, documentText);
+        documentText.append(' ');
+        document.appendField(ParsedDocument.TEXT, documentText);
     }
 
     private static void validateInputs(String[] args) {
@@ -195,21 +194,40 @@ public class IndexEngine {
             Logger.getLogger("IndexEngine")
                     .log(Level.INFO,
                             "Exiting... HELP: The IndexEngine program takes two arguments. " +
-                                    "The first argument is the location of the data file in the file system. " +
-                                    "The second argument is the location of the data storage in the file system.");
+                                    "The first argument is the location of the data file in the file system, or of a directory " +
+                                    "or glob (quoted) whose .gz data files are indexed in name order, as concurrent shards. " +
+                                    "The second argument is the location of the data storage in the file system. " +
+                                    "Optionally, " + MEMORY_BUDGET_OPTION + "N bounds the memory used for postings before a run is flushed to disk " +
+                                    "(default " + DEFAULT_MEMORY_BUDGET_MB + ") and " + THREADS_OPTION + "N sets the number of tokenizing workers " +
+                                    "(default: number of cores). " + DECOMPRESSION_THREADS_OPTION + "N sets the number of data files " +
+                                    "decompressed ahead of the indexer at the same time (default: number of cores). " + SHARDS_OPTION + "N sets " +
+                                    "the number of shards the data files are split into (default: number of cores). " + CODEC_OPTION + BLOCK_CODEC + "|" + VBYTE_CODEC + " selects the postings encoding " +
+                                    "(default " + BLOCK_CODEC + "). " + APPEND_OPTION + " adds the documents of the data file to an " +
+                                    "existing storage directory as a new index segment. " + POSITIONS_OPTION + " also stores the " +
+                                    "position of every token, which phrase and proximity queries require. " + VARIANTS_OPTION +
+                                    UNSTEMMED_VARIANT + "|" + STEMMED_VARIANT + "|" + BOTH_VARIANTS + " selects the indexes built from a " +
+                                    "single pass over the data file (default " + UNSTEMMED_VARIANT + ").");
             System.exit(1);
         }
 
-        File dataDirectory = new File(args[0]);
+        List<File> dataFiles = CollectionInputStream.listFiles(args[0]);
         File storeDirectory = new File(args[1]);
 
-        if (!dataDirectory.exists()) {
-            Logger.getLogger("IndexEngine").log(Level.INFO, "The latimes.gz data file does not exist in the directory provided. Exiting...");
+        if (dataFiles.isEmpty()) {
+            Logger.getLogger("IndexEngine").log(Level.INFO, "The data path provided matches no .gz data files. Exiting...");
             System.exit(1);
         }
 
-        if (storeDirectory.exists()) {
-            Logger.getLogger("IndexEngine").log(Level.INFO, "The storage directory you provided already exists. Exiting...");
+        for (File dataFile : dataFiles) {
+            if (!dataFile.exists()) {
+                Logger.getLogger("IndexEngine").log(Level.INFO, "The latimes.gz data file does not exist in the directory provided. Exiting...");
+                System.exit(1);
+            }
+        }
+
+        if (storeDirectory.exists() && !hasFlag(args, APPEND_OPTION)) {
+            Logger.getLogger("IndexEngine").log(Level.INFO, "The storage directory you provided already exists. " +
+                    "Use " + APPEND_OPTION + " to add documents to it. Exiting...");
             System.exit(1);
         }
 
@@ -217,14 +235,99 @@ public class IndexEngine {
         Logger.getLogger("IndexEngine").log(Level.INFO, "STORE_PATH: " + args[1]);
     }
 
-    private static String processDocnoLine(String docnoLine) {
-        // Extract trimmed DOCNO from line
+    private static String getOption(String[] args, String option, String defaultValue) {
+        // Find an optional --name=value argument following the positional arguments
+
+        for (int idx = 2; idx < args.length; idx++) {
+            if (args[idx].startsWith(option)) {
+                return args[idx].substring(option.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    private static boolean hasFlag(String[] args, String flag) {
+        // Find an optional --name argument following the positional arguments
+
+        for (int idx = 2; idx < args.length; idx++) {
+            if (args[idx].equals(flag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static FileLock acquireWriteLock(String storePath) {
+        // Lock the store against other IndexEngine processes, exit if it is already locked
+
+        try {
+            FileChannel lockChannel = FileChannel.open(Paths.get(storePath + IndexFormat.WRITE_LOCK_FILENAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock writeLock = lockChannel.tryLock();
+            if (writeLock != null) {
+                return writeLock;
+            }
+            Logger.getLogger("IndexEngine").log(Level.INFO, "Another IndexEngine is writing to " + storePath + ". Exiting...");
+        } catch (IOException e) {
+            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+        }
+        System.exit(1);
+        return null;
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        // Wait for the tasks of a shut down executor to end
+
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Logger.getLogger("IndexEngine").log(Level.INFO, "Waiting for the segment merges to finish...");
+            }
+        } catch (InterruptedException e) {
+            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+        }
+    }
+
+    private static void releaseWriteLock(FileLock writeLock) {
+        try {
+            writeLock.channel().close();
+        } catch (IOException e) {
+            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+        }
+    }
+
+    private static VariantManifest readVariants(String storePath) {
+        // Read the variants already in the store, exit if the store cannot be appended to
 
-        String docno = docnoLine.substring(DOCNO_START_TAG.length(), docnoLine.length() - (DOCNO_START_TAG.length() + 1));
-        return docno.trim();
+        try {
+            // Segments left staged by an interrupted build are published or dropped before anything else
+            VariantManifest variants = VariantManifest.read(storePath);
+            variants.recoverSegments();
+            return variants;
+        } catch (IOException e) {
+            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static int readDocumentCount(String storePath, VariantManifest variants) {
+        // Read the number of documents already in the store, exit if the store cannot be appended to
+        // The published segments are what counts: documents and metadata saved past them by an update that did not
+        // complete are dropped, so the document store and the index agree again
+
+        try {
+            int documentCount = variants.getDocumentCount();
+            SnippetEngine.rollBack(storePath, documentCount);
+            MetadataEngine.rollBack(storePath, documentCount);
+            return documentCount;
+        } catch (IOException e) {
+            Logger.getLogger("IndexEngine").log(Level.SEVERE, e.toString());
+            System.exit(1);
+            return 0;
+        }
     }
 
-    private static String[] getDateByDocno(String docno) {
+    static String[] getDateByDocno(String docno) {
         // Given DOCNO, extract embedded date
 
         String month = docno.substring(2, 4);
@@ -0,0 +1,79 @@
+import java.nio.ByteOrder;
+
+public class IndexFormat {
+    // On-disk index format, version 9. All numbers are little-endian.
+    //
+    // A store holds one or two index variants over the same documents:
+    // variants.manifest  magic (int), version (int), variantCount (int), then stemmed (byte) per variant
+    // unstemmed/, stemmed/  the directory of each variant, laid out as below
+    // segments.commit    present only while new segments are being published in every variant at once: the new
+    //                      segments.manifest of every variant is first staged as segments.manifest.pending, then this
+    //                      empty marker is created, the pending manifests are moved over the live ones and the marker is
+    //                      removed. An IndexEngine finding the marker completes the moves, and one finding pending
+    //                      manifests without it discards them, so the variants never disagree on their documents.
+    //                      The published segments are the only record of which documents are committed: segment
+    //                      directories past nextSegmentNumber, and documents, metadata and mappings past the document
+    //                      count of the segments, were left by an update that never published and are removed too
+    //
+    // A variant holds a list of immutable segments, each one a complete index over a contiguous range of internal ids:
+    // segments.manifest  live segments, replaced atomically whenever a segment is added or segments are merged
+    //                      magic (int), version (int), nextSegmentNumber (int), segmentCount (int), then per segment in
+    //                      internal id order: segmentNumber (int), docBase (int), documentCount (int)
+    // segments/segment-N/ the files below, where docIds are local to the segment (internal id = docBase + docId)
+    //
+    // index.manifest     header, written last so a complete manifest marks a complete index
+    //                      magic (int), version (int), documentCount (int), termCount (int),
+    //                      totalDocumentLength (long), averageDocumentLength (double), stemmed (byte), codec (byte),
+    //                      positional (byte)
+    // lexicon.bin        front-coded UTF-8 terms sorted in unsigned byte order, term id = position in this order
+    //                      blockCount (int), blockCount + 1 block offsets (int) into the block bytes that follow them
+    //                      every block holds LEXICON_BLOCK_SIZE terms: the first one in full as vbyte length + bytes,
+    //                      the others as vbyte length of the prefix shared with the previous term, vbyte suffix length
+    //                      and suffix bytes
+    // lexicon.mph        minimal perfect hash from terms to term ids (see MinimalPerfectHash)
+    // postings.offsets   one record per term id: postings offset into postings.bin (long), documentFrequency (int),
+    //                      collectionFrequency (long), idf (double) as given by idf() over the documents of the index,
+    //                      maxFrequency (int) and minDocumentLength (int) over the postings of the term, which bound
+    //                      its BM25 score for any parameters
+    // postings.bin       concatenated postings lists, encoded with the codec from the manifest
+    //                      (see PostingsBuffer for VBYTE_CODEC and BlockPostingsEncoder for BLOCK_CODEC)
+    // positions.offsets  positional indexes only, one record per term id: positions offset into positions.bin (long)
+    // positions.bin      positional indexes only, one list per term, kept apart so ranking never reads it
+    //                      (see PositionsBuffer for the encoding)
+    // documentLengths.bin  documentCount token counts (int), indexed by internal id
+    static final int MAGIC = 0x42585349;
+    static final int VERSION = 9;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    static final String VARIANTS_MANIFEST_FILENAME = "/variants.manifest";
+    static final String UNSTEMMED_DIRECTORY = "/unstemmed";
+    static final String STEMMED_DIRECTORY = "/stemmed";
+    static final String SEGMENTS_MANIFEST_FILENAME = "/segments.manifest";
+    static final String PENDING_SUFFIX = ".pending";
+    static final String SEGMENTS_COMMIT_FILENAME = "/segments.commit";
+    static final String SEGMENTS_DIRECTORY = "/segments";
+    static final String SEGMENT_PREFIX = "/segment-";
+    static final String WRITE_LOCK_FILENAME = "/write.lock";
+    static final String MANIFEST_FILENAME = "/index.manifest";
+    static final String LEXICON_FILENAME = "/lexicon.bin";
+    static final String PERFECT_HASH_FILENAME = "/lexicon.mph";
+    static final String POSTINGS_OFFSETS_FILENAME = "/postings.offsets";
+    static final String POSTINGS_FILENAME = "/postings.bin";
+    static final String POSITIONS_OFFSETS_FILENAME = "/positions.offsets";
+    static final String POSITIONS_FILENAME = "/positions.bin";
+    static final String DOCUMENT_LENGTHS_FILENAME = "/documentLengths.bin";
+
+    static final int MANIFEST_BYTES = 4 + 4 + 4 + 4 + 8 + 8 + 1 + 1 + 1;
+    static final int POSTINGS_OFFSET_RECORD_BYTES = 8 + 4 + 8 + 8 + 4 + 4;
+    static final int POSITIONS_OFFSET_RECORD_BYTES = 8;
+    static final int LEXICON_BLOCK_SIZE = 16;
+
+    static final byte VBYTE_CODEC = 1;
+    static final byte BLOCK_CODEC = 2;
+
+    static double idf(double documentCount, int documentFrequency) {
+        // BM25 inverse document frequency of a term, stored with every term so ranking does not recompute it
+
+        return Math.log((documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+}
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+public class IndexReader {
+    // Reads an index in the format described by IndexFormat
+    // Every section is memory-mapped, so opening an index costs a few system calls and no decoding. Postings and
+    // document lengths are read lazily from the mapped pages, which are shared through the OS page cache by every
+    // process that opens the same index.
+    // A mapping is limited to 2 GB, so postings.bin and positions.bin are mapped in chunks that start and end on list
+    // boundaries
+    private static final long MAX_CHUNK_BYTES = Integer.MAX_VALUE;
+
+    private final int documentCount;
+    private final int termCount;
+    private final long totalDocumentLength;
+    private final double averageDocumentLength;
+    private final boolean stemmed;
+    private final byte codec;
+    private final boolean positional;
+    private final Lexicon lexicon;
+    private final MinimalPerfectHash perfectHash;
+    private final ByteBuffer postingsOffsets;
+    private final MappedLists postings;
+    private final MappedLists positions;
+    private final IntBuffer documentLengths;
+
+    private IndexReader(String indexPath) throws IOException {
+        ByteBuffer manifest = mapSection(indexPath + IndexFormat.MANIFEST_FILENAME);
+        if (manifest.capacity() < IndexFormat.MANIFEST_BYTES || manifest.getInt() != IndexFormat.MAGIC) {
+            throw new IOException("No index found at " + indexPath);
+        }
+        int version = manifest.getInt();
+        if (version != IndexFormat.VERSION) {
+            throw new IOException("Unsupported index version " + version + " at " + indexPath);
+        }
+        documentCount = manifest.getInt();
+        termCount = manifest.getInt();
+        totalDocumentLength = manifest.getLong();
+        averageDocumentLength = manifest.getDouble();
+        stemmed = manifest.get() == 1;
+        codec = manifest.get();
+        positional = manifest.get() == 1;
+
+        lexicon = new Lexicon(mapSection(indexPath + IndexFormat.LEXICON_FILENAME), termCount);
+        perfectHash = new MinimalPerfectHash(mapSection(indexPath + IndexFormat.PERFECT_HASH_FILENAME));
+        postingsOffsets = mapSection(indexPath + IndexFormat.POSTINGS_OFFSETS_FILENAME);
+        documentLengths = mapSection(indexPath + IndexFormat.DOCUMENT_LENGTHS_FILENAME).asIntBuffer();
+
+        postings = new MappedLists(indexPath + IndexFormat.POSTINGS_FILENAME, postingsOffsets,
+                IndexFormat.POSTINGS_OFFSET_RECORD_BYTES, termCount);
+        if (positional) {
+            positions = new MappedLists(indexPath + IndexFormat.POSITIONS_FILENAME,
+                    mapSection(indexPath + IndexFormat.POSITIONS_OFFSETS_FILENAME), IndexFormat.POSITIONS_OFFSET_RECORD_BYTES, termCount);
+        } else {
+            positions = null;
+        }
+    }
+
+    public static IndexReader open(String indexPath) throws IOException {
+        return new IndexReader(indexPath);
+    }
+
+    public int getTermId(String term) {
+        // Term id of the term, -1 if the term does not occur in the collection
+        // Resolved by the perfect hash, the sorted lexicon is only searched if some terms could not be placed in it. The
+        // short fingerprints of the hash let a few absent terms through, so the term it resolves to is checked
+
+        int termId = perfectHash.getTermId(term);
+        if (termId >= 0 && !lexicon.getTerm(termId).equals(term)) {
+            termId = -1;
+        }
+        if (termId < 0 && perfectHash.hasUnplacedKeys()) {
+            termId = lexicon.getTermId(term);
+        }
+        return termId;
+    }
+
+    public String getTerm(int termId) {
+        return lexicon.getTerm(termId);
+    }
+
+    public Lexicon.TermIterator terms() {
+        // Every term of the lexicon in term id order
+        return lexicon.terms(0);
+    }
+
+    public Lexicon.TermIterator termsWithPrefix(String prefix) {
+        // Every term of the lexicon starting with the prefix, in term id order
+        return lexicon.termsWithPrefix(prefix);
+    }
+
+    public PostingsIterator postings(int termId) {
+        // Return a fresh iterator over the compressed postings list of the term
+
+        int chunk = postings.chunkOf(termId);
+        int offset = postings.offsetInChunk(termId, chunk);
+        int documentFrequency = documentFrequency(termId);
+        if (codec == IndexFormat.BLOCK_CODEC) {
+            return new BlockPostingsIterator(postings.chunks[chunk], offset, documentFrequency);
+        }
+        return new VBytePostingsIterator(postings.chunks[chunk], offset, documentFrequency);
+    }
+
+    public PositionsIterator positions(int termId) {
+        // Return a fresh iterator over the positions list of the term, null if the index has no positions
+
+        if (!positional) {
+            return null;
+        }
+        int chunk = positions.chunkOf(termId);
+        return new VBytePositionsIterator(positions.chunks[chunk], positions.offsetInChunk(termId, chunk), documentFrequency(termId));
+    }
+
+    public int documentFrequency(int termId) {
+        return postingsOffsets.getInt(termId * IndexFormat.POSTINGS_OFFSET_RECORD_BYTES + 8);
+    }
+
+    public long collectionFrequency(int termId) {
+        return postingsOffsets.getLong(termId * IndexFormat.POSTINGS_OFFSET_RECORD_BYTES + 12);
+    }
+
+    public double idf(int termId) {
+        // Idf of the term over the documents of this index only
+        return postingsOffsets.getDouble(termId * IndexFormat.POSTINGS_OFFSET_RECORD_BYTES + 20);
+    }
+
+    public int maxFrequency(int termId) {
+        // Highest tf in the postings of the term
+        return postingsOffsets.getInt(termId * IndexFormat.POSTINGS_OFFSET_RECORD_BYTES + 28);
+    }
+
+    public int minDocumentLength(int termId) {
+        // Length of the shortest document containing the term
+        return postingsOffsets.getInt(termId * IndexFormat.POSTINGS_OFFSET_RECORD_BYTES + 32);
+    }
+
+    public int documentLength(int docId) {
+        return documentLengths.get(docId);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    public long getTotalDocumentLength() {
+        return totalDocumentLength;
+    }
+
+    public double getAverageDocumentLength() {
+        return averageDocumentLength;
+    }
+
+    public boolean isStemmed() {
+        return stemmed;
+    }
+
+    public byte getCodec() {
+        return codec;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    private static ByteBuffer mapSection(String path) throws IOException {
+        // Memory-map a whole section file read-only with the byte order of the index format
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_CHUNK_BYTES) {
+                throw new IOException(path + " is too large to be memory-mapped");
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(IndexFormat.BYTE_ORDER);
+        }
+    }
+
+    private static class MappedLists {
+        // A file of concatenated lists (postings.bin or positions.bin) with the offset of every term's list in the first
+        // long of its record in an offsets section, mapped as chunks of whole lists
+
+        final ByteBuffer[] chunks;
+        private final long[] chunkStartOffsets;
+        private final int[] chunkFirstTermIds;
+        private final ByteBuffer offsets;
+        private final int recordBytes;
+        private final int termCount;
+
+        MappedLists(String path, ByteBuffer offsets, int recordBytes, int termCount) throws IOException {
+            this.offsets = offsets;
+            this.recordBytes = recordBytes;
+            this.termCount = termCount;
+
+            // Split the file into chunks of whole lists, a single chunk unless the file exceeds 2 GB
+            ArrayList<Long> startOffsets = new ArrayList<>();
+            ArrayList<Integer> firstTermIds = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                long fileLength = channel.size();
+                int firstTermId = 0;
+                while (firstTermId < termCount) {
+                    long startOffset = offset(firstTermId);
+                    int endTermId = lastTermEndingBefore(firstTermId, startOffset + MAX_CHUNK_BYTES, fileLength) + 1;
+                    if (endTermId == firstTermId) {
+                        throw new IOException("The list of term " + firstTermId + " in " + path + " is too large to be memory-mapped");
+                    }
+                    startOffsets.add(startOffset);
+                    firstTermIds.add(firstTermId);
+                    firstTermId = endTermId;
+                }
+
+                chunks = new ByteBuffer[startOffsets.size()];
+                chunkStartOffsets = new long[startOffsets.size()];
+                chunkFirstTermIds = new int[startOffsets.size()];
+                for (int chunk = 0; chunk < chunks.length; chunk++) {
+                    chunkStartOffsets[chunk] = startOffsets.get(chunk);
+                    chunkFirstTermIds[chunk] = firstTermIds.get(chunk);
+                    long endOffset = chunk + 1 < chunks.length ? startOffsets.get(chunk + 1) : fileLength;
+                    chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY, chunkStartOffsets[chunk], endOffset - chunkStartOffsets[chunk]);
+                }
+            }
+        }
+
+        int chunkOf(int termId) {
+            // Find the chunk holding the list of the term, there are only a handful of chunks for very large indexes
+
+            int chunk = chunkFirstTermIds.length - 1;
+            while (chunkFirstTermIds[chunk] > termId) {
+                chunk--;
+            }
+            return chunk;
+        }
+
+        int offsetInChunk(int termId, int chunk) {
+            return (int) (offset(termId) - chunkStartOffsets[chunk]);
+        }
+
+        private long offset(int termId) {
+            return offsets.getLong(termId * recordBytes);
+        }
+
+        private int lastTermEndingBefore(int firstTermId, long limitOffset, long fileLength) {
+            // Binary search the last term whose list ends at or before limitOffset
+
+            int low = firstTermId;
+            int high = termCount - 1;
+            int lastTermId = firstTermId - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long endOffset = mid + 1 < termCount ? offset(mid + 1) : fileLength;
+                if (endOffset <= limitOffset) {
+                    lastTermId = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return lastTermId;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class IndexWriter {
+    // Writes an index in the format described by IndexFormat
+    // Document lengths must be added first, in internal id order, then the terms in lexicon order. A positional index
+    // takes the positions of every term right after the term itself
+    // The number of documents is given up front, so the idf of every term is written along with its postings, and the
+    // lengths are kept to find the shortest document of every postings list
+
+    private final String indexPath;
+    private final byte codec;
+    private final boolean stemmed;
+    private final boolean positional;
+    private final int documentCount;
+    private final int[] documentLengths;
+    private final ChannelWriter postingsWriter;
+    private final ChannelWriter postingsOffsetsWriter;
+    private final ChannelWriter positionsWriter;
+    private final ChannelWriter positionsOffsetsWriter;
+    private final ChannelWriter documentLengthsWriter;
+    private final File lexiconBlocksFile;
+    private final ChannelWriter lexiconBlocksWriter;
+    private final IntArrayList lexiconBlockOffsets = new IntArrayList();
+    private byte[] previousTerm = new byte[0];
+    private long[] termHashes = new long[1024];
+    private final PostingsBuffer encodedPostings = new PostingsBuffer();
+    private final BlockPostingsEncoder blockEncoder = new BlockPostingsEncoder();
+    private final ByteArrayOutputStream blockPostings = new ByteArrayOutputStream();
+    private int termCount = 0;
+    private int positionsTermCount = 0;
+    private int documentLengthCount = 0;
+    private long totalDocumentLength = 0;
+
+    IndexWriter(String indexPath, byte codec, boolean stemmed, boolean positional, int documentCount) throws IOException {
+        this.indexPath = indexPath;
+        this.codec = codec;
+        this.stemmed = stemmed;
+        this.positional = positional;
+        this.documentCount = documentCount;
+        this.documentLengths = new int[documentCount];
+        new File(indexPath).mkdirs();
+
+        postingsWriter = new ChannelWriter(indexPath + IndexFormat.POSTINGS_FILENAME);
+        postingsOffsetsWriter = new ChannelWriter(indexPath + IndexFormat.POSTINGS_OFFSETS_FILENAME);
+        documentLengthsWriter = new ChannelWriter(indexPath + IndexFormat.DOCUMENT_LENGTHS_FILENAME);
+        positionsWriter = positional ? new ChannelWriter(indexPath + IndexFormat.POSITIONS_FILENAME) : null;
+        positionsOffsetsWriter = positional ? new ChannelWriter(indexPath + IndexFormat.POSITIONS_OFFSETS_FILENAME) : null;
+
+        // The block offsets have to precede the blocks in lexicon.bin, so the blocks are staged in a separate file
+        lexiconBlocksFile = new File(indexPath + IndexFormat.LEXICON_FILENAME + ".blocks");
+        lexiconBlocksWriter = new ChannelWriter(lexiconBlocksFile.getPath());
+    }
+
+    public byte getCodec() {
+        return codec;
+    }
+
+    public boolean isPositional() {
+        return positional;
+    }
+
+    public int addTerm(String term, PostingsIterator postings) throws IOException {
+        // Encode the postings with the codec of the index and append the term, returns the term id assigned to it
+
+        checkDocumentLengths();
+        if (codec == IndexFormat.BLOCK_CODEC) {
+            blockPostings.reset();
+            blockEncoder.encode(postings, documentLengths, blockPostings);
+            return writeTerm(term, postings.documentFrequency(), blockEncoder.collectionFrequency(), blockEncoder.maxFrequency(),
+                    blockEncoder.minDocumentLength(), blockPostings.toByteArray(), blockPostings.size());
+        }
+
+        encodedPostings.reset();
+        int maxFrequency = 0;
+        int minDocumentLength = Integer.MAX_VALUE;
+        for (int docId = postings.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = postings.nextDoc()) {
+            encodedPostings.addPosting(docId, postings.frequency());
+            maxFrequency = Math.max(maxFrequency, postings.frequency());
+            minDocumentLength = Math.min(minDocumentLength, documentLengths[docId]);
+        }
+        return writeTerm(term, encodedPostings.documentFrequency(), encodedPostings.collectionFrequency(), maxFrequency,
+                minDocumentLength, encodedPostings.getData(), encodedPostings.length());
+    }
+
+    public int addTerm(String term, int documentFrequency, long collectionFrequency, byte[] postings, int length) throws IOException {
+        // Append the next term of the lexicon with postings already encoded by a PostingsBuffer, for the vbyte codec
+        // The postings are still decoded once for the highest tf and the shortest document of the list
+
+        checkDocumentLengths();
+        int maxFrequency = 0;
+        int minDocumentLength = Integer.MAX_VALUE;
+        PostingsIterator iterator = new VBytePostingsIterator(ByteBuffer.wrap(postings, 0, length), 0, documentFrequency);
+        for (int docId = iterator.nextDoc(); docId != PostingsIterator.NO_MORE_DOCS; docId = iterator.nextDoc()) {
+            maxFrequency = Math.max(maxFrequency, iterator.frequency());
+            minDocumentLength = Math.min(minDocumentLength, documentLengths[docId]);
+        }
+        return writeTerm(term, documentFrequency, collectionFrequency, maxFrequency, minDocumentLength, postings, length);
+    }
+
+    private int writeTerm(String term, int documentFrequency, long collectionFrequency, int maxFrequency, int minDocumentLength,
+                          byte[] postings, int length) throws IOException {
+        // Append the next term of the lexicon with its encoded postings and return the term id assigned to it
+
+        byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+        if (termCount % IndexFormat.LEXICON_BLOCK_SIZE == 0) {
+            // The first term of a block is stored in full so a block can be decoded on its own
+            lexiconBlockOffsets.add((int) lexiconBlocksWriter.position());
+            lexiconBlocksWriter.writeVByte(termBytes.length);
+            lexiconBlocksWriter.write(termBytes, 0, termBytes.length);
+        } else {
+            int prefixLength = commonPrefixLength(previousTerm, termBytes);
+            lexiconBlocksWriter.writeVByte(prefixLength);
+            lexiconBlocksWriter.writeVByte(termBytes.length - prefixLength);
+            lexiconBlocksWriter.write(termBytes, prefixLength, termBytes.length - prefixLength);
+        }
+        previousTerm = termBytes;
+
+        if (termCount == termHashes.length) {
+            termHashes = Arrays.copyOf(termHashes, termHashes.length * 2);
+        }
+        termHashes[termCount] = MinimalPerfectHash.hash(term);
+
+        postingsOffsetsWriter.writeLong(postingsWriter.position());
+        postingsOffsetsWriter.writeInt(documentFrequency);
+        postingsOffsetsWriter.writeLong(collectionFrequency);
+        postingsOffsetsWriter.writeDouble(IndexFormat.idf(documentCount, documentFrequency));
+        postingsOffsetsWriter.writeInt(maxFrequency);
+        postingsOffsetsWriter.writeInt(minDocumentLength);
+        postingsWriter.write(postings, 0, length);
+
+        return termCount++;
+    }
+
+    public void addPositions(byte[] positions, int length) throws IOException {
+        // Append the positions list of the term added last, encoded by a PositionsBuffer
+
+        if (positionsTermCount != termCount - 1) {
+            throw new IOException("Positions must follow their term, " + positionsTermCount + " of " + termCount + " terms have positions");
+        }
+        positionsOffsetsWriter.writeLong(positionsWriter.position());
+        positionsWriter.write(positions, 0, length);
+        positionsTermCount++;
+    }
+
+    public void addDocumentLength(int documentLength) throws IOException {
+        if (documentLengthCount == documentCount) {
+            throw new IOException("The index only has " + documentCount + " documents");
+        }
+        documentLengths[documentLengthCount] = documentLength;
+        documentLengthsWriter.writeInt(documentLength);
+        totalDocumentLength += documentLength;
+        documentLengthCount++;
+    }
+
+    public void close() throws IOException {
+        // Finish every section and write the manifest
+
+        checkDocumentLengths();
+        lexiconBlocksWriter.close();
+        ChannelWriter lexiconWriter = new ChannelWriter(indexPath + IndexFormat.LEXICON_FILENAME);
+        lexiconWriter.writeInt(lexiconBlockOffsets.size());
+        for (int block = 0; block < lexiconBlockOffsets.size(); block++) {
+            lexiconWriter.writeInt(lexiconBlockOffsets.get(block));
+        }
+        lexiconWriter.writeInt((int) lexiconBlocksWriter.position());
+        appendFile(lexiconBlocksFile, lexiconWriter);
+        lexiconWriter.close();
+        lexiconBlocksFile.delete();
+        MinimalPerfectHash.write(termHashes, termCount, indexPath + IndexFormat.PERFECT_HASH_FILENAME);
+
+        postingsWriter.close();
+        postingsOffsetsWriter.close();
+        documentLengthsWriter.close();
+        if (positional) {
+            if (positionsTermCount != termCount) {
+                throw new IOException("Only " + positionsTermCount + " of " + termCount + " terms have positions");
+            }
+            positionsWriter.close();
+            positionsOffsetsWriter.close();
+        }
+
+        ChannelWriter manifestWriter = new ChannelWriter(indexPath + IndexFormat.MANIFEST_FILENAME);
+        manifestWriter.writeInt(IndexFormat.MAGIC);
+        manifestWriter.writeInt(IndexFormat.VERSION);
+        manifestWriter.writeInt(documentCount);
+        manifestWriter.writeInt(termCount);
+        manifestWriter.writeLong(totalDocumentLength);
+        manifestWriter.writeDouble(documentCount == 0 ? 0.0 : (double) totalDocumentLength / documentCount);
+        manifestWriter.writeByte((byte) (stemmed ? 1 : 0));
+        manifestWriter.writeByte(codec);
+        manifestWriter.writeByte((byte) (positional ? 1 : 0));
+        manifestWriter.close();
+
+        Logger.getLogger("IndexWriter").log(Level.INFO, "Wrote index with " + termCount + " terms and " + documentCount + " documents to " + indexPath);
+    }
+
+    private void checkDocumentLengths() throws IOException {
+        if (documentLengthCount != documentCount) {
+            throw new IOException("Only " + documentLengthCount + " of " + documentCount + " documents have a length");
+        }
+    }
+
+    private static int commonPrefixLength(byte[] term1, byte[] term2) {
+        int common = Math.min(term1.length, term2.length);
+        int length = 0;
+        while (length < common && term1[length] == term2[length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static void appendFile(File file, ChannelWriter writer) throws IOException {
+        // Copy a staged file to the end of another section
+
+        byte[] chunk = new byte[1 << 16];
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int read = in.read(chunk);
+            while (read > 0) {
+                writer.write(chunk, 0, read);
+                read = in.read(chunk);
+            }
+        }
+    }
+}
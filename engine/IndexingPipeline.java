@@ -0,0 +1,203 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class IndexingPipeline {
+    // Indexes data files into a store as one new segment of every variant of the store
+    // Pipeline stages: the calling thread reads batches of documents, a pool of workers tokenizes and inverts them,
+    // and a single I/O stage writes documents and metadata in internal id order
+    private static final int BATCH_SIZE = 64;
+    private static final int QUEUED_BATCHES_PER_THREAD = 4;
+    // How long the reader waits for room in a queue before checking whether a stage has failed
+    private static final long QUEUE_POLL_MILLIS = 100;
+
+    private final byte codec;
+    private final boolean positional;
+    private final int threads;
+    private final int decompressionThreads;
+    private final long memoryBudgetBytes;
+
+    IndexingPipeline(byte codec, boolean positional, int threads, int decompressionThreads, long memoryBudgetBytes) {
+        this.codec = codec;
+        this.positional = positional;
+        this.threads = threads;
+        this.decompressionThreads = decompressionThreads;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public int index(List<File> dataFiles, String storePath, VariantManifest variants, int docBase, boolean append,
+                     List<Future<Void>> merges) throws IOException, InterruptedException, ExecutionException {
+        // Index the documents of the data files with internal ids from docBase and return the number of documents
+        // The new segments are published once every document has been saved, merging them is left to the caller. The
+        // merges of the store still running when the documents are inverted are awaited before the segments are written
+
+        final boolean UNSTEMMED = variants.hasVariant(false);
+        final boolean STEMMED = variants.hasVariant(true);
+
+        // Initialize engine instances
+        SnippetEngine snippetEngine = new SnippetEngine(storePath, append);
+        MetadataEngine metadataEngine = new MetadataEngine(storePath, append);
+
+        BlockingQueue<DocumentBatch> workQueue = new ArrayBlockingQueue<>(threads * QUEUED_BATCHES_PER_THREAD);
+        BlockingQueue<DocumentBatch> ioQueue = new ArrayBlockingQueue<>(threads * QUEUED_BATCHES_PER_THREAD);
+        Map<Integer, int[]> batchDocumentLengths = new ConcurrentSkipListMap<>();
+        ArrayList<SPIMIIndexer> unstemmedIndexers = new ArrayList<>();
+        ArrayList<SPIMIIndexer> stemmedIndexers = new ArrayList<>();
+        ArrayList<Future<Void>> stages = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        StemCache stemCache = STEMMED ? new StemCache() : null;
+
+        // The memory budget is shared by the indexers of every worker and variant
+        final long INDEXER_BUDGET_BYTES = memoryBudgetBytes / threads / ((UNSTEMMED ? 1 : 0) + (STEMMED ? 1 : 0));
+        for (int worker = 0; worker < threads; worker++) {
+            SPIMIIndexer unstemmedIndexer = null;
+            SPIMIIndexer stemmedIndexer = null;
+            if (UNSTEMMED) {
+                unstemmedIndexer = new SPIMIIndexer(storePath + "/runs/unstemmed-" + worker, INDEXER_BUDGET_BYTES, positional);
+                unstemmedIndexers.add(unstemmedIndexer);
+            }
+            if (STEMMED) {
+                stemmedIndexer = new SPIMIIndexer(storePath + "/runs/stemmed-" + worker, INDEXER_BUDGET_BYTES, positional);
+                stemmedIndexers.add(stemmedIndexer);
+            }
+            stages.add(executor.submit(new IndexingWorker(workQueue, unstemmedIndexer, stemmedIndexer, stemCache, docBase, batchDocumentLengths)));
+        }
+        stages.add(executor.submit(() -> writeDocuments(ioQueue, metadataEngine, snippetEngine)));
+
+        // The data files are decompressed ahead of the parser by their own threads, which are stopped however indexing ends
+        CollectionInputStream collectionStream = new CollectionInputStream(dataFiles, decompressionThreads);
+        try {
+            DocumentParser documentParser = new DocumentParser(collectionStream);
+
+            int internalId = docBase;
+            DocumentBatch batch = new DocumentBatch(internalId);
+
+            Logger.getLogger("IndexEngine").log(Level.INFO, "Saving documents one-by-one to FS and writing to mapping/metadata files...");
+
+            // Stream the collection one document at a time, the parser finds the DOCNO and the fields of every document in
+            // the same pass
+            ParsedDocument document = documentParser.next();
+            while (document != null) {
+                // Hand every document to the pipeline in batches
+                // Internal ids are assigned here in collection order, so they do not depend on scheduling
+                batch.addDocument(document);
+                internalId++;
+
+                if (batch.size() == BATCH_SIZE) {
+                    put(workQueue, batch, stages);
+                    put(ioQueue, batch, stages);
+                    batch = new DocumentBatch(internalId);
+                }
+
+                document = documentParser.next();
+            }
+
+            if (batch.size() > 0) {
+                put(workQueue, batch, stages);
+                put(ioQueue, batch, stages);
+            }
+            for (int worker = 0; worker < threads; worker++) {
+                put(workQueue, DocumentBatch.END, stages);
+            }
+            put(ioQueue, DocumentBatch.END, stages);
+
+            for (Future<Void> stage : stages) {
+                stage.get();
+            }
+
+            // Documents still buffered are written here, a failure fails the build before any segment is published
+            metadataEngine.closeWriters();
+            snippetEngine.closeWriters();
+
+            for (Future<Void> merge : merges) {
+                merge.get();
+            }
+
+            // The segments of both variants are written first and then published together, so the variants always hold
+            // the same documents
+            if (internalId > docBase) {
+                ArrayList<SegmentManifest> manifests = new ArrayList<>();
+                if (UNSTEMMED) {
+                    manifests.add(writeSegment(variants.variantPath(false), unstemmedIndexers, false, batchDocumentLengths, docBase, internalId - docBase));
+                }
+                if (STEMMED) {
+                    manifests.add(writeSegment(variants.variantPath(true), stemmedIndexers, true, batchDocumentLengths, docBase, internalId - docBase));
+                }
+                variants.publishSegments(manifests);
+            }
+            new File(storePath + "/runs").delete();
+            return internalId - docBase;
+        } finally {
+            collectionStream.close();
+            executor.shutdownNow();
+        }
+    }
+
+    private static void put(BlockingQueue<DocumentBatch> queue, DocumentBatch batch, List<Future<Void>> stages)
+            throws InterruptedException, ExecutionException {
+        // Hand a batch to a stage of the pipeline, failing as soon as a stage has failed instead of waiting forever for
+        // a stage that no longer takes batches
+
+        checkStages(stages);
+        while (!queue.offer(batch, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkStages(stages);
+        }
+    }
+
+    private static void checkStages(List<Future<Void>> stages) throws InterruptedException, ExecutionException {
+        // Rethrow the failure of a stage that has ended, the caller's finally block then shuts the pipeline down
+        // A stage only ends without failing once it has taken its END batch
+
+        for (Future<Void> stage : stages) {
+            if (stage.isDone()) {
+                stage.get();
+            }
+        }
+    }
+
+    private SegmentManifest writeSegment(String variantPath, ArrayList<SPIMIIndexer> spimiIndexers, boolean stem,
+                                         Map<Integer, int[]> batchDocumentLengths, int docBase, int documentCount) throws IOException {
+        // Merge the runs of a variant into a new segment and return the manifest of the variant with the segment added,
+        // for the caller to publish
+
+        SegmentManifest manifest = SegmentManifest.read(variantPath);
+        int segmentNumber = manifest.newSegmentNumber();
+        IndexWriter indexWriter = new IndexWriter(manifest.segmentPath(segmentNumber), codec, stem, positional, documentCount);
+
+        Logger.getLogger("IndexEngine").log(Level.INFO, "Writing document lengths...");
+        for (int[] lengths : batchDocumentLengths.values()) {
+            for (int length : lengths) {
+                indexWriter.addDocumentLength(length);
+            }
+        }
+
+        Logger.getLogger("IndexEngine").log(Level.INFO, "Merging inverted index runs into segment " + segmentNumber + " of " + variantPath + "...");
+        SPIMIIndexer.mergeRuns(spimiIndexers, indexWriter);
+        indexWriter.close();
+
+        manifest.addSegment(new SegmentManifest.SegmentInfo(segmentNumber, docBase, documentCount));
+        return manifest;
+    }
+
+    private static Void writeDocuments(BlockingQueue<DocumentBatch> ioQueue, MetadataEngine metadataEngine, SnippetEngine snippetEngine)
+            throws IOException, InterruptedException {
+        // I/O stage of the pipeline: save every document and its metadata, batches arrive in internal id order
+        // Documents have to be saved in order, so the first failure ends the stage and fails the build
+
+        DocumentBatch batch = ioQueue.take();
+        while (batch != DocumentBatch.END) {
+            for (int idx = 0; idx < batch.size(); idx++) {
+                String docno = batch.documents.get(idx).docno;
+                metadataEngine.saveMetadata(batch.documents.get(idx), docno, batch.firstInternalId + idx, IndexEngine.getDateByDocno(docno));
+                snippetEngine.saveDocument(batch.documents.get(idx), batch.firstInternalId + idx);
+            }
+            batch = ioQueue.take();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+
+public class IndexingWorker implements Callable<Void> {
+    private final BlockingQueue<DocumentBatch> workQueue;
+    private final SPIMIIndexer unstemmedIndexer;
+    private final SPIMIIndexer stemmedIndexer;
+    private final int docBase;
+    private final Map<Integer, int[]> batchDocumentLengths;
+    private final StringBuilder documentText = new StringBuilder();
+    private final Tokenizer tokenizer = new Tokenizer();
+    private final Tokenizer.TokenHandler tokenHandler = this::addToken;
+    private final StemCache stemCache;
+    private final PorterStemmer stemmer = new PorterStemmer();
+    private final IntIntHashMap unstemmedWordCounts = new IntIntHashMap(1024);
+    private final IntArrayList unstemmedTermIds = new IntArrayList();
+    private final IntIntHashMap stemmedWordCounts = new IntIntHashMap(1024);
+    private final IntArrayList stemmedTermIds = new IntArrayList();
+    private int documentLength;
+
+    IndexingWorker(BlockingQueue<DocumentBatch> workQueue, SPIMIIndexer unstemmedIndexer, SPIMIIndexer stemmedIndexer, StemCache stemCache, int docBase, Map<Integer, int[]> batchDocumentLengths) {
+        // One indexer per variant of the store, the indexer of a variant that is not built is null
+        // The stem cache is shared with the other workers, each worker stems its misses with its own stemmer
+        this.workQueue = workQueue;
+        this.unstemmedIndexer = unstemmedIndexer;
+        this.stemmedIndexer = stemmedIndexer;
+        this.stemCache = stemCache;
+        this.docBase = docBase;
+        this.batchDocumentLengths = batchDocumentLengths;
+    }
+
+    @Override
+    public Void call() throws IOException, InterruptedException {
+        // Tokenize and count the terms of every batch taken off the queue, adding the postings to this worker's own blocks
+        // Every document is tokenized once, and its stemmed tokens are derived from the same tokens for the stemmed variant
+        // Document lengths are recorded per batch and stitched together in internal id order by the IndexEngine
+        // Postings use docIds local to the new segment, the internal id minus the docBase of the segment
+        // A failed run flush ends the worker, failing the build, rather than leaving documents without their postings
+
+        DocumentBatch batch = workQueue.take();
+        while (batch != DocumentBatch.END) {
+            int[] documentLengths = new int[batch.size()];
+
+            for (int idx = 0; idx < batch.size(); idx++) {
+                IndexEngine.getDocumentText(batch.documents.get(idx), documentText);
+                int docId = batch.firstInternalId + idx - docBase;
+
+                countWords(documentText);
+                documentLengths[idx] = documentLength;
+                if (unstemmedIndexer != null) {
+                    unstemmedIndexer.addPostings(unstemmedWordCounts, unstemmedTermIds, docId);
+                }
+                if (stemmedIndexer != null) {
+                    stemmedIndexer.addPostings(stemmedWordCounts, stemmedTermIds, docId);
+                }
+            }
+
+            batchDocumentLengths.put(batch.firstInternalId, documentLengths);
+            batch = workQueue.take();
+        }
+
+        return null;
+    }
+
+    private void countWords(CharSequence documentText) {
+        // Count the number of occurrences of every token by its local term id in each variant, reusing the same maps for
+        // every document. The term ids of the tokens are kept in document order for the positions
+
+        unstemmedWordCounts.clear();
+        unstemmedTermIds.clear();
+        stemmedWordCounts.clear();
+        stemmedTermIds.clear();
+        documentLength = 0;
+        tokenizer.tokenize(documentText, tokenHandler);
+    }
+
+    private void addToken(char[] text, int start, int length) {
+        // Look the token up as a span of the tokenizer's buffer, a String is only created for terms new to the block
+
+        documentLength++;
+        if (unstemmedIndexer != null) {
+            int termId = unstemmedIndexer.getTermId(text, start, length);
+            unstemmedWordCounts.addTo(termId, 1);
+            unstemmedTermIds.add(termId);
+        }
+        if (stemmedIndexer != null) {
+            int termId = stemmedIndexer.getTermId(stemCache.stem(text, start, length, stemmer));
+            stemmedWordCounts.addTo(termId, 1);
+            stemmedTermIds.add(termId);
+        }
+    }
+}
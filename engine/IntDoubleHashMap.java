@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+public class IntDoubleHashMap {
+    // Open-addressing int -> double map with linear probing
+    // Integer.MIN_VALUE marks an empty slot and cannot be used as a key
+    // Entries are visited with capacity()/isUsed(slot)/keyAt(slot)/valueAt(slot) to avoid iterator objects
+    private static final int EMPTY_KEY = Integer.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private double[] values;
+    private int size = 0;
+    private int mask;
+
+    IntDoubleHashMap() {
+        this(16);
+    }
+
+    IntDoubleHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public double get(int key, double defaultValue) {
+        int slot = findSlot(key);
+        return keys[slot] == EMPTY_KEY ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return keys[findSlot(key)] != EMPTY_KEY;
+    }
+
+    public void put(int key, double value) {
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            size++;
+            values[slot] = value;
+            growIfNeeded();
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    public double addTo(int key, double increment) {
+        // Add increment to the value of key (0 if absent) and return the new value
+
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            values[slot] = increment;
+            size++;
+            growIfNeeded();
+            return increment;
+        }
+        values[slot] += increment;
+        return values[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, EMPTY_KEY);
+            size = 0;
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY_KEY;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int findSlot(int key) {
+        // Slot holding key, or the empty slot where it would be inserted
+
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIfNeeded() {
+        if (size <= keys.length * LOAD_FACTOR) {
+            return;
+        }
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_KEY) {
+                int newSlot = findSlot(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    private static int hash(int key) {
+        return IntIntHashMap.hash(key);
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        return IntIntHashMap.tableSizeFor(expectedSize);
+    }
+}
@@ -0,0 +1,143 @@
+import java.util.Arrays;
+
+public class IntIntHashMap {
+    // Open-addressing int -> int map with linear probing
+    // Integer.MIN_VALUE marks an empty slot and cannot be used as a key
+    // Entries are visited with capacity()/isUsed(slot)/keyAt(slot)/valueAt(slot) to avoid iterator objects
+    private static final int EMPTY_KEY = Integer.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private int size = 0;
+    private int mask;
+    private final int initialCapacity;
+
+    IntIntHashMap() {
+        this(16);
+    }
+
+    IntIntHashMap(int expectedSize) {
+        this.initialCapacity = tableSizeFor(expectedSize);
+        allocate(initialCapacity);
+    }
+
+    public int get(int key, int defaultValue) {
+        int slot = findSlot(key);
+        return keys[slot] == EMPTY_KEY ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return keys[findSlot(key)] != EMPTY_KEY;
+    }
+
+    public void put(int key, int value) {
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            size++;
+            values[slot] = value;
+            growIfNeeded();
+        } else {
+            values[slot] = value;
+        }
+    }
+
+    public int addTo(int key, int increment) {
+        // Add increment to the value of key (0 if absent) and return the new value
+
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            values[slot] = increment;
+            size++;
+            growIfNeeded();
+            return increment;
+        }
+        values[slot] += increment;
+        return values[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        // A table that has grown far beyond what it held is shrunk back instead of being emptied, so a map reused for
+        // small contents after large ones does not keep paying for its largest size
+
+        if (size > 0) {
+            int capacity = Math.max(initialCapacity, tableSizeFor(size));
+            if (keys.length > capacity * 4) {
+                allocate(capacity);
+            } else {
+                Arrays.fill(keys, EMPTY_KEY);
+            }
+            size = 0;
+        }
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isUsed(int slot) {
+        return keys[slot] != EMPTY_KEY;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int findSlot(int key) {
+        // Slot holding key, or the empty slot where it would be inserted
+
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growIfNeeded() {
+        if (size <= keys.length * LOAD_FACTOR) {
+            return;
+        }
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != EMPTY_KEY) {
+                int newSlot = findSlot(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    static int hash(int key) {
+        // Fibonacci hashing spreads consecutive ids over the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(4, capacity);
+    }
+}
@@ -0,0 +1,112 @@
+public class LengthNorms {
+    // The BM25 length normalization K = k1 * ((1 - b) + b * documentLength / averageDocumentLength) of every document
+    // for one (k1, b) pair, indexed by internal id, so scoring a posting reads K instead of recomputing it
+    // Exact norms take a double per document. Quantized norms take a byte per document, which encodes the document
+    // length exactly below FREE_VALUES tokens and with 4 significant bits above, and K is read from a table of the 256
+    // possible values. Quantized norms change scores slightly, as lengths are rounded down to their encoded value
+    private static final int MANTISSA_BITS = 3;
+    private static final int FREE_VALUES = 255 - encodeLog(Integer.MAX_VALUE);
+
+    private final double k1;
+    private final double b;
+    private final double averageDocumentLength;
+    private final double[] norms;
+    private final byte[] quantizedLengths;
+    private final double[] normsByQuantizedLength;
+
+    private LengthNorms(double k1, double b, double averageDocumentLength, double[] norms, byte[] quantizedLengths,
+                        double[] normsByQuantizedLength) {
+        this.k1 = k1;
+        this.b = b;
+        this.averageDocumentLength = averageDocumentLength;
+        this.norms = norms;
+        this.quantizedLengths = quantizedLengths;
+        this.normsByQuantizedLength = normsByQuantizedLength;
+    }
+
+    static LengthNorms exact(int[] documentLengths, double averageDocumentLength, double k1, double b) {
+        double[] norms = new double[documentLengths.length];
+        for (int docId = 0; docId < norms.length; docId++) {
+            norms[docId] = norm(documentLengths[docId], averageDocumentLength, k1, b);
+        }
+        return new LengthNorms(k1, b, averageDocumentLength, norms, null, null);
+    }
+
+    static LengthNorms quantized(int[] documentLengths, double averageDocumentLength, double k1, double b) {
+        byte[] quantizedLengths = new byte[documentLengths.length];
+        for (int docId = 0; docId < quantizedLengths.length; docId++) {
+            quantizedLengths[docId] = quantize(documentLengths[docId]);
+        }
+        double[] normsByQuantizedLength = new double[256];
+        for (int value = 0; value < normsByQuantizedLength.length; value++) {
+            normsByQuantizedLength[value] = norm(dequantize((byte) value), averageDocumentLength, k1, b);
+        }
+        return new LengthNorms(k1, b, averageDocumentLength, null, quantizedLengths, normsByQuantizedLength);
+    }
+
+    public double get(int docId) {
+        if (norms != null) {
+            return norms[docId];
+        }
+        return normsByQuantizedLength[quantizedLengths[docId] & 0xFF];
+    }
+
+    public double forLength(int documentLength) {
+        // K of any document of the given length, as get() returns it, which grows with the length
+
+        if (norms != null) {
+            return norm(documentLength, averageDocumentLength, k1, b);
+        }
+        return normsByQuantizedLength[quantize(documentLength) & 0xFF];
+    }
+
+    public boolean isQuantized() {
+        return norms == null;
+    }
+
+    boolean matches(double k1, double b, boolean quantized) {
+        return this.k1 == k1 && this.b == b && isQuantized() == quantized;
+    }
+
+    private static double norm(int documentLength, double averageDocumentLength, double k1, double b) {
+        return k1 * ((1 - b) + (b * (documentLength / averageDocumentLength)));
+    }
+
+    static byte quantize(int length) {
+        // Lengths below FREE_VALUES are their own code, the others follow as a logarithmic code of what is left
+
+        if (length < FREE_VALUES) {
+            return (byte) length;
+        }
+        return (byte) (FREE_VALUES + encodeLog(length - FREE_VALUES));
+    }
+
+    static int dequantize(byte code) {
+        int value = code & 0xFF;
+        if (value < FREE_VALUES) {
+            return value;
+        }
+        return FREE_VALUES + decodeLog(value - FREE_VALUES);
+    }
+
+    private static int encodeLog(int value) {
+        // Keep the MANTISSA_BITS bits below the highest set bit, and the number of bits dropped under them plus one
+        // Values below 1 << MANTISSA_BITS are kept as they are, with 0 in the upper bits
+
+        int bits = 32 - Integer.numberOfLeadingZeros(value);
+        if (bits <= MANTISSA_BITS) {
+            return value;
+        }
+        int shift = bits - MANTISSA_BITS - 1;
+        return ((value >>> shift) & ((1 << MANTISSA_BITS) - 1)) | ((shift + 1) << MANTISSA_BITS);
+    }
+
+    private static int decodeLog(int code) {
+        int mantissa = code & ((1 << MANTISSA_BITS) - 1);
+        int shift = (code >>> MANTISSA_BITS) - 1;
+        if (shift < 0) {
+            return mantissa;
+        }
+        return (mantissa | (1 << MANTISSA_BITS)) << shift;
+    }
+}
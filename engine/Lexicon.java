@@ -0,0 +1,217 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class Lexicon {
+    // Sorted, front-coded term lexicon read from lexicon.bin, term ids are positions in unsigned UTF-8 byte order
+    // Only the block offsets are held on the heap, the blocks themselves are read from the mapped file. A lookup binary
+    // searches the first terms of the blocks and then decodes at most one block
+
+    private final ByteBuffer blocks;
+    private final int[] blockOffsets;
+    private final int termCount;
+
+    Lexicon(ByteBuffer lexiconData, int termCount) {
+        ByteBuffer data = lexiconData.duplicate().order(IndexFormat.BYTE_ORDER);
+        int blockCount = data.getInt(0);
+        this.blockOffsets = new int[blockCount + 1];
+        for (int block = 0; block <= blockCount; block++) {
+            blockOffsets[block] = data.getInt(4 + block * 4);
+        }
+        this.blocks = data.position(4 + (blockCount + 1) * 4).slice();
+        this.termCount = termCount;
+    }
+
+    public int getTermId(String term) {
+        // Find the term, returns -1 if it is not in the lexicon
+
+        byte[] key = term.getBytes(StandardCharsets.UTF_8);
+        TermIterator terms = seekCeiling(key);
+        return terms.termId() < termCount && terms.compareTo(key) == 0 ? terms.termId() : -1;
+    }
+
+    public String getTerm(int termId) {
+        TermIterator terms = new TermIterator(termId);
+        terms.next();
+        return terms.term();
+    }
+
+    public TermIterator terms(int fromTermId) {
+        // Iterate over the terms in lexicon order, starting at the given term id
+
+        return new TermIterator(fromTermId);
+    }
+
+    public TermIterator termsWithPrefix(String prefix) {
+        // Iterate over every term starting with the prefix, they form a contiguous range of term ids
+
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        TermIterator terms = new TermIterator(ceilingTermId(key));
+        terms.prefix = key;
+        return terms;
+    }
+
+    public int ceilingTermId(String term) {
+        // Id of the first term greater than or equal to the given term, size() if there is none
+
+        return ceilingTermId(term.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public int size() {
+        return termCount;
+    }
+
+    private int ceilingTermId(byte[] key) {
+        return seekCeiling(key).termId();
+    }
+
+    private TermIterator seekCeiling(byte[] key) {
+        // Binary search the last block whose first term is <= key, then scan that block up to the first term >= key
+
+        int low = 0;
+        int high = blockOffsets.length - 2;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compareFirstTerm(mid, key) <= 0) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        TermIterator terms = new TermIterator(block * IndexFormat.LEXICON_BLOCK_SIZE);
+        while (terms.next()) {
+            if (terms.compareTo(key) >= 0) {
+                break;
+            }
+        }
+        return terms;
+    }
+
+    private int compareFirstTerm(int block, byte[] key) {
+        // Compare the first term of a block, which is stored in full, with the key in unsigned byte order
+
+        int position = blockOffsets[block];
+        int length = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = blocks.get(position++);
+            length |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        int common = Math.min(length, key.length);
+        for (int idx = 0; idx < common; idx++) {
+            int difference = (blocks.get(position + idx) & 0xFF) - (key[idx] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+
+    public static int compareTerms(String term1, String term2) {
+        // Order terms by code point, which is the same as the unsigned byte order of their UTF-8 encoding
+        // String.compareTo differs only when surrogate pairs are compared with characters above U+E000
+
+        int common = Math.min(term1.length(), term2.length());
+        for (int idx = 0; idx < common; idx++) {
+            char char1 = term1.charAt(idx);
+            char char2 = term2.charAt(idx);
+            if (char1 != char2) {
+                if (char1 >= 0xD800 && char2 >= 0xD800) {
+                    return toCodePointOrder(char1) - toCodePointOrder(char2);
+                }
+                return char1 - char2;
+            }
+        }
+        return term1.length() - term2.length();
+    }
+
+    private static int toCodePointOrder(char c) {
+        // Move surrogates above the rest of the BMP so UTF-16 code units sort like code points
+        return c >= 0xE000 ? c - 0x800 : c + 0x2000;
+    }
+
+    public class TermIterator {
+        // Decodes front-coded terms one at a time into a reused byte array
+        // next() must be called before the first term is read, and returns false at the end of the lexicon or prefix
+
+        private final int firstTermId;
+        private int termId;
+        private int position;
+        private byte[] term = new byte[32];
+        private int termLength = 0;
+        private byte[] prefix = null;
+
+        private TermIterator(int firstTermId) {
+            this.firstTermId = firstTermId;
+            // Start decoding at the block holding the first term, the terms before it are skipped by next()
+            int block = Math.min(firstTermId, termCount) / IndexFormat.LEXICON_BLOCK_SIZE;
+            this.termId = block * IndexFormat.LEXICON_BLOCK_SIZE - 1;
+            this.position = blockOffsets[Math.min(block, blockOffsets.length - 1)];
+        }
+
+        public boolean next() {
+            do {
+                if (termId + 1 >= termCount) {
+                    termId = termCount;
+                    return false;
+                }
+                decodeNext();
+            } while (termId < firstTermId);
+
+            if (prefix != null && !hasPrefix(prefix)) {
+                termId = termCount;
+                return false;
+            }
+            return true;
+        }
+
+        public int termId() {
+            return termId;
+        }
+
+        public String term() {
+            return new String(term, 0, termLength, StandardCharsets.UTF_8);
+        }
+
+        private boolean hasPrefix(byte[] key) {
+            if (termLength < key.length) {
+                return false;
+            }
+            return Arrays.equals(term, 0, key.length, key, 0, key.length);
+        }
+
+        private int compareTo(byte[] key) {
+            return Arrays.compareUnsigned(term, 0, termLength, key, 0, key.length);
+        }
+
+        private void decodeNext() {
+            termId++;
+            int prefixLength = termId % IndexFormat.LEXICON_BLOCK_SIZE == 0 ? 0 : readVByte();
+            int suffixLength = readVByte();
+            termLength = prefixLength + suffixLength;
+            if (termLength > term.length) {
+                term = Arrays.copyOf(term, Math.max(termLength, term.length * 2));
+            }
+            blocks.get(position, term, prefixLength, suffixLength);
+            position += suffixLength;
+        }
+
+        private int readVByte() {
+            byte current = blocks.get(position++);
+            int value = current & 0x7F;
+            int shift = 7;
+            while ((current & 0x80) != 0) {
+                current = blocks.get(position++);
+                value |= (current & 0x7F) << shift;
+                shift += 7;
+            }
+            return value;
+        }
+    }
+}
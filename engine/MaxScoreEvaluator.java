@@ -0,0 +1,112 @@
+public class MaxScoreEvaluator implements QueryEvaluator {
+    // Document-at-a-time evaluation with MaxScore pruning (Turtle and Flood, 1995), one segment after the other
+    // The cursors are sorted by increasing upper bound. The non-essential ones are the longest prefix whose upper bounds
+    // add up to at most the threshold: a document found only in them cannot enter the top documents, so only the
+    // essential cursors produce candidates. The non-essential cursors are probed from the highest upper bound down, and
+    // only while the score of the candidate so far plus the bounds of the cursors left can still beat the threshold.
+    // Common terms have low upper bounds, so their long postings lists are mostly skipped once the threshold rises
+
+    @Override
+    public void evaluate(RankedQuery query, TopDocsCollector collector) {
+        for (int segment = 0; segment < query.index.getSegmentCount(); segment++) {
+            evaluateSegment(query, segment, collector);
+        }
+    }
+
+    private static void evaluateSegment(RankedQuery query, int segment, TopDocsCollector collector) {
+        int docBase = query.index.getDocBase(segment);
+        TermCursor[] cursors = new TermCursor[query.terms.length];
+        int cursorCount = TermCursor.openCursors(query, segment, cursors);
+        sortByUpperBound(cursors, cursorCount);
+
+        // Upper bound of a document found in the cursors up to each one
+        double[] cumulativeBounds = new double[cursorCount];
+        double bound = 0;
+        for (int cursor = 0; cursor < cursorCount; cursor++) {
+            bound += cursors[cursor].upperBound;
+            cumulativeBounds[cursor] = bound;
+        }
+
+        double[] termScores = new double[query.terms.length];
+        boolean[] matchedTerms = new boolean[query.terms.length];
+        int firstEssential = 0;
+        while (true) {
+            // The threshold never decreases, so cursors only ever become non-essential
+            double threshold = collector.threshold();
+            while (firstEssential < cursorCount && cumulativeBounds[firstEssential] <= threshold) {
+                firstEssential++;
+            }
+
+            int candidate = PostingsIterator.NO_MORE_DOCS;
+            for (int cursor = firstEssential; cursor < cursorCount; cursor++) {
+                candidate = Math.min(candidate, cursors[cursor].docId());
+            }
+            if (candidate == PostingsIterator.NO_MORE_DOCS) {
+                // No document left in the segment can enter the top documents
+                break;
+            }
+
+            int internalId = docBase + candidate;
+            boolean accepted = query.accepts(internalId);
+            // The partial score counts a term once per query occurrence like the upper bounds, and it is added up in
+            // cursor order, so it is raised by the slack of the upper bounds before being compared with the threshold
+            double score = 0;
+            double magnitude = 0;
+            for (int cursor = firstEssential; cursor < cursorCount; cursor++) {
+                TermCursor essential = cursors[cursor];
+                if (essential.docId() == candidate) {
+                    if (accepted) {
+                        termScores[essential.term] = query.termScore(essential.term, internalId, essential.postings.frequency());
+                        matchedTerms[essential.term] = true;
+                        double termScore = query.queryFrequencies[essential.term] * termScores[essential.term];
+                        score += termScore;
+                        magnitude += Math.abs(termScore);
+                    }
+                    essential.postings.nextDoc();
+                }
+            }
+
+            if (accepted) {
+                boolean pruned = false;
+                for (int cursor = firstEssential - 1; cursor >= 0; cursor--) {
+                    if (score + magnitude * RankedQuery.UPPER_BOUND_SLACK + cumulativeBounds[cursor] <= threshold) {
+                        pruned = true;
+                        break;
+                    }
+                    TermCursor nonEssential = cursors[cursor];
+                    if (nonEssential.postings.advance(candidate) == candidate) {
+                        termScores[nonEssential.term] = query.termScore(nonEssential.term, internalId, nonEssential.postings.frequency());
+                        matchedTerms[nonEssential.term] = true;
+                        double termScore = query.queryFrequencies[nonEssential.term] * termScores[nonEssential.term];
+                        score += termScore;
+                        magnitude += Math.abs(termScore);
+                    }
+                }
+                if (!pruned) {
+                    collector.collect(internalId, query.sumInQueryOrder(termScores, matchedTerms));
+                }
+                for (int cursor = 0; cursor < cursorCount; cursor++) {
+                    matchedTerms[cursors[cursor].term] = false;
+                }
+            }
+        }
+
+        for (int cursor = 0; cursor < cursorCount; cursor++) {
+            query.addDecodedPostings(cursors[cursor].decodedPostings());
+        }
+    }
+
+    private static void sortByUpperBound(TermCursor[] cursors, int cursorCount) {
+        // Insertion sort by increasing upper bound, queries have a handful of terms
+
+        for (int idx = 1; idx < cursorCount; idx++) {
+            TermCursor cursor = cursors[idx];
+            int position = idx - 1;
+            while (position >= 0 && cursors[position].upperBound > cursor.upperBound) {
+                cursors[position + 1] = cursors[position];
+                position--;
+            }
+            cursors[position + 1] = cursor;
+        }
+    }
+}
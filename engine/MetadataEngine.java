@@ -1,28 +1,33 @@
 import java.io.*;
-import java.util.ArrayList;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 public class MetadataEngine {
     private String storePath;
+    private boolean append;
     private BufferedWriter mappingBufferedWriter;
     private BufferedWriter metaDataBufferedWriter;
-    private static final String HEADLINE_START_TAG = "<HEADLINE>";
-    private static final String HEADLINE_END_TAG = "</HEADLINE>";
     private static final String MAPPING_FILENAME = "/IDMapping.txt";
     private static final String METADATA_FILENAME = "/metadata.txt";
+    private static final int METADATA_LINES = 4;
 
-    MetadataEngine(String storePath) {
+    MetadataEngine(String storePath) throws IOException {
+        this(storePath, false);
+    }
+
+    MetadataEngine(String storePath, boolean append) throws IOException {
+        // In append mode, the mapping and metadata of new documents are added after those of the indexed documents
         this.storePath = storePath;
+        this.append = append;
         initializeWriter();
     }
 
-    public void saveMetadata(ArrayList<String> documentArray, String docno, int internalId, String[] date) throws IOException {
+    public void saveMetadata(ParsedDocument document, String docno, int internalId, String[] date) throws IOException {
         String month = date[0];
         String day = date[1];
         String year = date[2];
         String formattedDate = month + day + year;
-        String headline = DocumentUtils.extractTextByTag(documentArray, HEADLINE_START_TAG, HEADLINE_END_TAG);
+        String headline = document.getField(ParsedDocument.HEADLINE);
 
         // Write document metadata to file
         metaDataBufferedWriter.write(String.valueOf(internalId));
@@ -40,26 +45,88 @@ public class MetadataEngine {
         mappingBufferedWriter.newLine();
     }
 
-    public void closeWriters() {
-        try {
-            mappingBufferedWriter.close();
-            metaDataBufferedWriter.close();
-        } catch (IOException e) {
-            Logger.getLogger("MetadataEngine").log(Level.SEVERE, e.toString());
+    public int appendMetadata(String shardStorePath, int docBase) throws IOException {
+        // Append the metadata and mappings of a shard's store, whose internal ids start at 0, with the ids shifted by
+        // docBase. Returns the number of documents of the shard
+
+        int documentCount = 0;
+        try (BufferedReader metaDataReader = new BufferedReader(new FileReader(shardStorePath + METADATA_FILENAME))) {
+            int line = 0;
+            for (String metadataLine = metaDataReader.readLine(); metadataLine != null; metadataLine = metaDataReader.readLine()) {
+                // Every document has METADATA_LINES lines, starting with its internal id
+                if (line++ % METADATA_LINES == 0) {
+                    metadataLine = String.valueOf(Integer.parseInt(metadataLine) + docBase);
+                    documentCount++;
+                }
+                metaDataBufferedWriter.write(metadataLine);
+                metaDataBufferedWriter.newLine();
+            }
+        }
+
+        try (BufferedReader mappingReader = new BufferedReader(new FileReader(shardStorePath + MAPPING_FILENAME))) {
+            for (String mappingLine = mappingReader.readLine(); mappingLine != null; mappingLine = mappingReader.readLine()) {
+                int separator = mappingLine.indexOf(' ');
+                mappingBufferedWriter.write((Integer.parseInt(mappingLine.substring(0, separator)) + docBase) + mappingLine.substring(separator));
+                mappingBufferedWriter.newLine();
+            }
         }
+        return documentCount;
     }
 
-    private void initializeWriter() {
-        try {
-            File mappingFile = new File(storePath + MAPPING_FILENAME);
-            FileOutputStream mappingFOS = new FileOutputStream(mappingFile);
-            mappingBufferedWriter = new BufferedWriter(new OutputStreamWriter(mappingFOS));
-
-            File metaDataFile = new File(storePath + METADATA_FILENAME);
-            FileOutputStream metaDataFileFOS = new FileOutputStream(metaDataFile);
-            metaDataBufferedWriter = new BufferedWriter(new OutputStreamWriter(metaDataFileFOS));
-        } catch (IOException e) {
-            Logger.getLogger("MetadataEngine").log(Level.SEVERE, e.toString());
+    public void closeWriters() throws IOException {
+        // Write the buffered mappings and metadata, they are only complete once this returns
+
+        mappingBufferedWriter.close();
+        metaDataBufferedWriter.close();
+    }
+
+    static void rollBack(String storePath, int documentCount) throws IOException {
+        // Drop the mappings and metadata saved after those of the first documentCount documents by an update that did
+        // not publish its segments
+
+        truncateLines(storePath + METADATA_FILENAME, (long) documentCount * METADATA_LINES);
+        truncateLines(storePath + MAPPING_FILENAME, documentCount);
+    }
+
+    private static void truncateLines(String path, long lines) throws IOException {
+        // Cut a file after its first lines
+
+        File file = new File(path);
+        if (!file.exists() && lines == 0) {
+            return;
+        }
+        long end = 0;
+        long remaining = lines;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (remaining > 0) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    throw new IOException(path + " holds fewer than the " + lines + " lines of the indexed documents");
+                }
+                int idx = 0;
+                while (idx < read && remaining > 0) {
+                    if (buffer[idx++] == '\n') {
+                        remaining--;
+                    }
+                }
+                end += idx;
+            }
         }
+        if (end < file.length()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+    }
+
+    private void initializeWriter() throws IOException {
+        File mappingFile = new File(storePath + MAPPING_FILENAME);
+        FileOutputStream mappingFOS = new FileOutputStream(mappingFile, append);
+        mappingBufferedWriter = new BufferedWriter(new OutputStreamWriter(mappingFOS));
+
+        File metaDataFile = new File(storePath + METADATA_FILENAME);
+        FileOutputStream metaDataFileFOS = new FileOutputStream(metaDataFile, append);
+        metaDataBufferedWriter = new BufferedWriter(new OutputStreamWriter(metaDataFileFOS));
     }
 }
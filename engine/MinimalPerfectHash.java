@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+public class MinimalPerfectHash {
+    // BBHash-style minimal perfect hash from terms to term ids, read from lexicon.mph
+    // Every level is a bit array of GAMMA * (keys left) bits. A key lands in the first level where its bit was set by
+    // no other key, and its slot is the rank of that bit over all levels, so n keys map onto exactly n slots with about
+    // 3.3 bits per key in the levels. Term ids follow lexicon order, not slot order, so each slot also keeps the term id
+    // in ceil(log2 n) bits and an 8-bit fingerprint of the key, packed together: about 30 bits per key in all for 200k
+    // terms. A term that is not in the lexicon still hashes to some slot, and the fingerprint rejects all but 1 in 256
+    // of them, the caller confirms the term of the slot against the lexicon.
+    // Keys still colliding after MAX_LEVELS levels (in practice only terms with the same 64-bit hash) are left unplaced,
+    // and hasUnplacedKeys() tells the caller to fall back to the sorted lexicon for terms that are not found.
+    //
+    // lexicon.mph  placedCount (int), unplacedCount (int), levelCount (int), termIdBits (int), levelCount + 1 level bit
+    //              offsets (int), the bit words (long), then the slot words (long): by slot, termIdBits + FINGERPRINT_BITS
+    //              bits holding (term id << FINGERPRINT_BITS | fingerprint), from the lowest bit of the first word up
+    private static final double GAMMA = 2.0;
+    private static final int MAX_LEVELS = 32;
+    private static final int WORDS_PER_RANK_SAMPLE = 8;
+    private static final int FINGERPRINT_BITS = 8;
+
+    private final int placedCount;
+    private final int unplacedCount;
+    private final int[] levelOffsets;
+    private final LongBuffer words;
+    private final int[] rankSamples;
+    private final int slotBits;
+    private final LongBuffer slots;
+
+    MinimalPerfectHash(ByteBuffer data) {
+        ByteBuffer header = data.duplicate().order(IndexFormat.BYTE_ORDER);
+        placedCount = header.getInt();
+        unplacedCount = header.getInt();
+        int levelCount = header.getInt();
+        slotBits = header.getInt() + FINGERPRINT_BITS;
+        levelOffsets = new int[levelCount + 1];
+        for (int level = 0; level <= levelCount; level++) {
+            levelOffsets[level] = header.getInt();
+        }
+        int wordCount = levelOffsets[levelCount] / 64;
+        words = header.slice().order(IndexFormat.BYTE_ORDER).limit(wordCount * 8).asLongBuffer();
+        int slotsStart = header.position() + wordCount * 8;
+        slots = data.duplicate().position(slotsStart).slice().order(IndexFormat.BYTE_ORDER).asLongBuffer();
+
+        // Number of set bits before every WORDS_PER_RANK_SAMPLE words, the only structure built on the heap
+        rankSamples = sampleRanks(words);
+    }
+
+    public int getTermId(String term) {
+        // One hash of the term, one probe per level until its bit is found, then one slot read
+        // Returns -1 if the term is absent, except for 1 in 256 absent terms which get the id of another term
+
+        long hash = hash(term);
+        int position = findPosition(words, levelOffsets, hash);
+        if (position < 0) {
+            return -1;
+        }
+        long slot = readSlot(slots, (long) rank(words, rankSamples, position) * slotBits, slotBits);
+        return (slot & ((1 << FINGERPRINT_BITS) - 1)) == fingerprint(hash) ? (int) (slot >>> FINGERPRINT_BITS) : -1;
+    }
+
+    public boolean hasUnplacedKeys() {
+        return unplacedCount > 0;
+    }
+
+    public int size() {
+        return placedCount + unplacedCount;
+    }
+
+    public static void write(long[] hashes, int keyCount, String path) throws IOException {
+        // Build the hash function for the term hashes, where hashes[termId] = hash(term), and write it to path
+
+        int[] keys = new int[keyCount];
+        for (int idx = 0; idx < keyCount; idx++) {
+            keys[idx] = idx;
+        }
+        int remaining = keyCount;
+
+        IntArrayList levelOffsetList = new IntArrayList();
+        levelOffsetList.add(0);
+        long[] bits = new long[0];
+
+        for (int level = 0; level < MAX_LEVELS && remaining > 0; level++) {
+            // Level sizes are rounded up to whole words so every level starts on a word boundary
+            int levelBits = (int) Math.max(64, ((long) Math.ceil(remaining * GAMMA) + 63) / 64 * 64);
+            long[] levelWords = new long[levelBits / 64];
+            long[] collisions = new long[levelBits / 64];
+            for (int idx = 0; idx < remaining; idx++) {
+                int position = reduce(levelHash(hashes[keys[idx]], level), levelBits);
+                if ((levelWords[position >>> 6] & (1L << position)) != 0) {
+                    collisions[position >>> 6] |= 1L << position;
+                } else {
+                    levelWords[position >>> 6] |= 1L << position;
+                }
+            }
+
+            // Keys that collided are retried on the next level, their bits are cleared on this one
+            int retried = 0;
+            for (int idx = 0; idx < remaining; idx++) {
+                int position = reduce(levelHash(hashes[keys[idx]], level), levelBits);
+                if ((collisions[position >>> 6] & (1L << position)) != 0) {
+                    keys[retried++] = keys[idx];
+                }
+            }
+            for (int word = 0; word < levelWords.length; word++) {
+                levelWords[word] &= ~collisions[word];
+            }
+
+            int start = levelOffsetList.get(level);
+            bits = Arrays.copyOf(bits, (start + levelBits) / 64);
+            System.arraycopy(levelWords, 0, bits, start / 64, levelWords.length);
+            levelOffsetList.add(start + levelBits);
+            remaining = retried;
+        }
+
+        // Place every term id with its fingerprint at the slot given by the rank of its bit
+        int[] levelOffsets = levelOffsetList.toArray();
+        LongBuffer words = LongBuffer.wrap(bits);
+        int[] rankSamples = sampleRanks(words);
+        int placedCount = keyCount - remaining;
+        int termIdBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, keyCount - 1));
+        int slotBits = termIdBits + FINGERPRINT_BITS;
+        long[] slotWords = new long[(int) (((long) placedCount * slotBits + 63) / 64)];
+        for (int termId = 0; termId < keyCount; termId++) {
+            int position = findPosition(words, levelOffsets, hashes[termId]);
+            if (position >= 0) {
+                long slotPosition = (long) rank(words, rankSamples, position) * slotBits;
+                long slot = (long) termId << FINGERPRINT_BITS | fingerprint(hashes[termId]);
+                int word = (int) (slotPosition >>> 6);
+                int shift = (int) (slotPosition & 63);
+                slotWords[word] |= slot << shift;
+                if (shift + slotBits > 64) {
+                    slotWords[word + 1] |= slot >>> (64 - shift);
+                }
+            }
+        }
+
+        ChannelWriter writer = new ChannelWriter(path);
+        writer.writeInt(placedCount);
+        writer.writeInt(remaining);
+        writer.writeInt(levelOffsets.length - 1);
+        writer.writeInt(termIdBits);
+        for (int levelOffset : levelOffsets) {
+            writer.writeInt(levelOffset);
+        }
+        for (long word : bits) {
+            writer.writeLong(word);
+        }
+        for (long word : slotWords) {
+            writer.writeLong(word);
+        }
+        writer.close();
+    }
+
+    static long hash(String term) {
+        // 64-bit FNV-1a over the UTF-16 code units of the term, finished with the MurmurHash3 mixer
+
+        long hash = 0xCBF29CE484222325L;
+        for (int idx = 0; idx < term.length(); idx++) {
+            hash = (hash ^ term.charAt(idx)) * 0x100000001B3L;
+        }
+        return mix(hash);
+    }
+
+    private static int findPosition(LongBuffer words, int[] levelOffsets, long hash) {
+        // Global bit position of the key in the first level where its bit is set, -1 if there is none
+
+        for (int level = 0; level < levelOffsets.length - 1; level++) {
+            int position = levelOffsets[level] + reduce(levelHash(hash, level), levelOffsets[level + 1] - levelOffsets[level]);
+            if ((words.get(position >>> 6) & (1L << position)) != 0) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static int rank(LongBuffer words, int[] rankSamples, int position) {
+        // Number of set bits before the position
+
+        int word = position >>> 6;
+        int rank = rankSamples[word / WORDS_PER_RANK_SAMPLE];
+        for (int idx = word - word % WORDS_PER_RANK_SAMPLE; idx < word; idx++) {
+            rank += Long.bitCount(words.get(idx));
+        }
+        return rank + Long.bitCount(words.get(word) & ((1L << position) - 1));
+    }
+
+    private static long readSlot(LongBuffer slots, long slotPosition, int slotBits) {
+        // The slotBits bits starting at a bit position, which may straddle two words
+
+        int word = (int) (slotPosition >>> 6);
+        int shift = (int) (slotPosition & 63);
+        long slot = slots.get(word) >>> shift;
+        if (shift + slotBits > 64) {
+            slot |= slots.get(word + 1) << (64 - shift);
+        }
+        return slot & ((1L << slotBits) - 1);
+    }
+
+    private static int[] sampleRanks(LongBuffer words) {
+        int[] rankSamples = new int[words.limit() / WORDS_PER_RANK_SAMPLE + 1];
+        int rank = 0;
+        for (int word = 0; word < words.limit(); word++) {
+            if (word % WORDS_PER_RANK_SAMPLE == 0) {
+                rankSamples[word / WORDS_PER_RANK_SAMPLE] = rank;
+            }
+            rank += Long.bitCount(words.get(word));
+        }
+        return rankSamples;
+    }
+
+    private static long levelHash(long hash, int level) {
+        return mix(hash ^ ((level + 1) * 0x9E3779B97F4A7C15L));
+    }
+
+    private static int fingerprint(long hash) {
+        return (int) mix(hash ^ 0xC2B2AE3D27D4EB4FL) & ((1 << FINGERPRINT_BITS) - 1);
+    }
+
+    private static int reduce(long hash, int range) {
+        // Map the high 32 bits of the hash onto [0, range) without a division
+        return (int) (((hash >>> 32) * range) >>> 32);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,51 @@
+import java.nio.charset.StandardCharsets;
+
+public class ParsedDocument {
+    // One document of the collection as read by the DocumentParser: its raw bytes, its DOCNO, and the spans of the lines
+    // holding the text of its HEADLINE, GRAPHIC and TEXT fields
+    // The bytes are the UTF-8 lines of the document from <DOC> to </DOC>, each one followed by '\n', which is what the
+    // document store keeps. The text of a field is only decoded when it is asked for
+    static final int HEADLINE = 0;
+    static final int GRAPHIC = 1;
+    static final int TEXT = 2;
+    static final int FIELD_COUNT = 3;
+
+    final byte[] bytes;
+    final String docno;
+    private final int[][] fieldSpans;
+
+    ParsedDocument(byte[] bytes, String docno, int[][] fieldSpans) {
+        // fieldSpans[field] holds the (start, end) offsets in bytes of every line of the field, in document order
+        this.bytes = bytes;
+        this.docno = docno;
+        this.fieldSpans = fieldSpans;
+    }
+
+    public void appendField(int field, StringBuilder text) {
+        // Append the text of a field, its lines are concatenated without a separator
+        // ASCII lines are copied byte by byte, only lines with other characters are decoded through a String
+
+        int[] spans = fieldSpans[field];
+        for (int span = 0; span < spans.length; span += 2) {
+            int start = spans[span];
+            int end = spans[span + 1];
+            int idx = start;
+            while (idx < end && bytes[idx] >= 0) {
+                idx++;
+            }
+            if (idx == end) {
+                for (idx = start; idx < end; idx++) {
+                    text.append((char) bytes[idx]);
+                }
+            } else {
+                text.append(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    public String getField(int field) {
+        StringBuilder text = new StringBuilder();
+        appendField(field, text);
+        return text.toString();
+    }
+}
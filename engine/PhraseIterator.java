@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+public class PhraseIterator implements PostingsIterator {
+    // Documents where the terms of a PhraseQuery occur at consecutive positions or, given a window, all within that
+    // many consecutive tokens. The documents holding every term are found by leapfrogging the positions lists from the
+    // rarest term, and only then are their positions decoded and checked
+    // frequency() is the number of matches in the current document
+
+    private final PositionsIterator[] positions;
+    private final PositionsIterator[] byFrequency;
+    private final int window;
+    private final int[][] termPositions;
+    private final int[] termFrequencies;
+    private final int[] cursors;
+    private int docId = -1;
+    private int frequency = 0;
+
+    PhraseIterator(PositionsIterator[] positions, int window) {
+        // positions holds one iterator per term in phrase order, a window of 0 asks for an exact phrase
+        this.positions = positions;
+        this.window = window;
+        this.byFrequency = positions.clone();
+        Arrays.sort(byFrequency, Comparator.comparingInt(PositionsIterator::documentFrequency));
+        this.termPositions = new int[positions.length][16];
+        this.termFrequencies = new int[positions.length];
+        this.cursors = new int[positions.length];
+    }
+
+    @Override
+    public int nextDoc() {
+        return docId == NO_MORE_DOCS ? docId : findMatch(docId + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        return docId >= target ? docId : findMatch(target);
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public int documentFrequency() {
+        // Upper bound, the number of documents holding the rarest term
+        return byFrequency[0].documentFrequency();
+    }
+
+    private int findMatch(int target) {
+        // First document at or after target where the positions match
+
+        int candidate = target;
+        while (candidate != NO_MORE_DOCS) {
+            boolean inAllLists = true;
+            for (PositionsIterator iterator : byFrequency) {
+                int otherDocId = iterator.advance(candidate);
+                if (otherDocId != candidate) {
+                    candidate = otherDocId;
+                    inAllLists = false;
+                    break;
+                }
+            }
+
+            if (inAllLists) {
+                readPositions();
+                frequency = window == 0 ? countPhrases() : countWindows();
+                if (frequency > 0) {
+                    docId = candidate;
+                    return docId;
+                }
+                candidate++;
+            }
+        }
+        frequency = 0;
+        docId = NO_MORE_DOCS;
+        return docId;
+    }
+
+    private void readPositions() {
+        for (int term = 0; term < positions.length; term++) {
+            int termFrequency = positions[term].frequency();
+            if (termFrequency > termPositions[term].length) {
+                termPositions[term] = new int[Math.max(termFrequency, termPositions[term].length * 2)];
+            }
+            for (int idx = 0; idx < termFrequency; idx++) {
+                termPositions[term][idx] = positions[term].nextPosition();
+            }
+            termFrequencies[term] = termFrequency;
+            cursors[term] = 0;
+        }
+    }
+
+    private int countPhrases() {
+        // Count the positions of the first term followed by every other term at its offset in the phrase
+        // The cursors only move forward, so a document costs one pass over the positions of each term
+
+        int matches = 0;
+        for (int idx = 0; idx < termFrequencies[0]; idx++) {
+            int start = termPositions[0][idx];
+            boolean isMatch = true;
+            for (int term = 1; term < positions.length && isMatch; term++) {
+                while (cursors[term] < termFrequencies[term] && termPositions[term][cursors[term]] < start + term) {
+                    cursors[term]++;
+                }
+                if (cursors[term] == termFrequencies[term]) {
+                    return matches;
+                }
+                isMatch = termPositions[term][cursors[term]] == start + term;
+            }
+            if (isMatch) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private int countWindows() {
+        // Slide over the positions in increasing order, keeping one position of every term, and count the times the
+        // span from the smallest to the largest of them fits in the window
+
+        int matches = 0;
+        while (true) {
+            int first = 0;
+            int last = Integer.MIN_VALUE;
+            for (int term = 0; term < positions.length; term++) {
+                int position = termPositions[term][cursors[term]];
+                if (position < termPositions[first][cursors[first]]) {
+                    first = term;
+                }
+                last = Math.max(last, position);
+            }
+            if (last - termPositions[first][cursors[first]] < window) {
+                matches++;
+            }
+            cursors[first]++;
+            if (cursors[first] == termFrequencies[first]) {
+                return matches;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class PhraseQuery {
+    // A quoted part of a query, evaluated from the positions of a positional index
+    // "savings and loan" matches documents holding the terms at consecutive positions, and "savings loan"~5 matches
+    // documents where every term occurs within a window of 5 consecutive tokens
+    private static final char QUOTE = '"';
+    private static final char WINDOW_MARKER = '~';
+
+    final ArrayList<String> terms;
+    final int window;
+
+    private PhraseQuery(ArrayList<String> terms, int window) {
+        // A window of 0 asks for an exact phrase
+        this.terms = terms;
+        this.window = window;
+    }
+
+    public static ArrayList<PhraseQuery> parse(String query, boolean stem) {
+        // Find the quoted phrases of a query, tokenized like the documents of the index
+        // An unmatched quote is ignored, the rest of the query is then only made of plain terms
+
+        ArrayList<PhraseQuery> phrases = new ArrayList<>();
+        int start = query.indexOf(QUOTE);
+        while (start >= 0) {
+            int end = query.indexOf(QUOTE, start + 1);
+            if (end < 0) {
+                break;
+            }
+
+            String text = query.substring(start + 1, end);
+            ArrayList<String> terms = stem ? DocumentUtils.tokenizeAndStem(text) : DocumentUtils.tokenize(text);
+            int windowEnd = windowEnd(query, end);
+            int window = windowEnd > end + 2 ? parseWindow(query, end + 2, windowEnd) : 0;
+            if (!terms.isEmpty()) {
+                phrases.add(new PhraseQuery(terms, window));
+            }
+
+            start = query.indexOf(QUOTE, Math.max(windowEnd, end + 1));
+        }
+        return phrases;
+    }
+
+    public static String removeOperators(String query) {
+        // Drop the window sizes following the phrases so they are not taken for query terms, the quotes themselves are
+        // separators to the tokenizer
+
+        StringBuilder text = new StringBuilder();
+        int copied = 0;
+        int start = query.indexOf(QUOTE);
+        while (start >= 0) {
+            int end = query.indexOf(QUOTE, start + 1);
+            if (end < 0) {
+                break;
+            }
+            text.append(query, copied, end + 1);
+            copied = windowEnd(query, end);
+            start = query.indexOf(QUOTE, Math.max(copied, end + 1));
+        }
+        return text.append(query.substring(copied)).toString();
+    }
+
+    public static IntIntHashMap matchAll(ArrayList<PhraseQuery> phrases, SegmentedIndex index) {
+        // Documents matching every phrase, mapped to their total number of phrase matches
+        // Returns null if the query has no phrases or the index has no positions, in which case nothing is filtered out
+
+        if (phrases.isEmpty()) {
+            return null;
+        }
+        if (!index.isPositional()) {
+            Logger.getLogger("PhraseQuery").log(Level.WARNING, "The index was built without positions, " +
+                    "phrases are searched as plain terms");
+            return null;
+        }
+
+        IntIntHashMap matches = new IntIntHashMap();
+        PostingsIterator[] lists = new PostingsIterator[phrases.size()];
+        for (int idx = 0; idx < lists.length; idx++) {
+            lists[idx] = phrases.get(idx).matches(index);
+            if (lists[idx] == null) {
+                return matches;
+            }
+        }
+        Arrays.sort(lists, Comparator.comparingInt(PostingsIterator::documentFrequency));
+
+        // Intersect the phrases, the rarest one leads
+        PostingsIterator lead = lists[0];
+        int docId = lead.nextDoc();
+        while (docId != PostingsIterator.NO_MORE_DOCS) {
+            boolean inAllLists = true;
+            int frequency = lead.frequency();
+            for (int listIdx = 1; listIdx < lists.length; listIdx++) {
+                int otherDocId = lists[listIdx].advance(docId);
+                if (otherDocId != docId) {
+                    docId = lead.advance(otherDocId);
+                    inAllLists = false;
+                    break;
+                }
+                frequency += lists[listIdx].frequency();
+            }
+
+            if (inAllLists) {
+                matches.put(docId, frequency);
+                docId = lead.nextDoc();
+            }
+        }
+        return matches;
+    }
+
+    public PostingsIterator matches(SegmentedIndex index) {
+        // Documents matching the phrase, null if one of its terms is not in the index
+
+        PositionsIterator[] positions = new PositionsIterator[terms.size()];
+        for (int idx = 0; idx < positions.length; idx++) {
+            positions[idx] = index.positions(terms.get(idx));
+            if (positions[idx] == null) {
+                return null;
+            }
+        }
+        return new PhraseIterator(positions, window);
+    }
+
+    private static int parseWindow(String query, int start, int end) {
+        // Window size written as the digits from start to end, capped to Integer.MAX_VALUE since it comes from the user
+        // and any window that large already spans every document
+
+        long window = 0;
+        for (int idx = start; idx < end; idx++) {
+            window = Math.min(Integer.MAX_VALUE, window * 10 + Character.digit(query.charAt(idx), 10));
+        }
+        return (int) window;
+    }
+
+    private static int windowEnd(String query, int closingQuote) {
+        // End of the ~N window following a closing quote, the position after the quote if there is none
+
+        int idx = closingQuote + 1;
+        if (idx + 1 < query.length() && query.charAt(idx) == WINDOW_MARKER && Character.isDigit(query.charAt(idx + 1))) {
+            idx++;
+            while (idx < query.length() && Character.isDigit(query.charAt(idx))) {
+                idx++;
+            }
+            return idx;
+        }
+        return closingQuote + 1;
+    }
+}
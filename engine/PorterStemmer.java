@@ -11,437 +11,290 @@
 ***************************************************************
 */
 
+import java.util.ArrayList;
+
 public class PorterStemmer {
+    // Stems words in place in a reusable char buffer, an instance is not thread-safe
+    // This produces exactly the stems of the original String-based implementation, including where it departs from the
+    // published algorithm, since indexes built with it must keep matching stemmed queries:
+    //  - a word with a character that is not a letter is not stemmed, and the empty word stems to "No term entered"
+    //  - the measure m only counts a, e, i, o and u as vowels, but *v* (the stem contains a vowel) also accepts y
+    //  - some step 2 rules measure, and cut, a different part of the word than their suffix (see STEP2)
+    //  - a rule whose condition fails falls through to the next rule whose suffix matches
+    private static final String NO_TERM = "No term entered";
+
+    // Suffix, number of characters cut when the condition holds, and what is appended after the cut
+    // The condition is measured on the word without the cut characters. Rules are tried in this order, among the rules
+    // whose suffix ends with the last letter of the word
+    private static final Rule[][] STEP2 = byLastLetter(
+            new Rule("ational", 5, "e"),
+            new Rule("tional", 2, ""),
+            new Rule("enci", 2, ""),
+            new Rule("anci", 1, "e"),
+            new Rule("izer", 1, ""),
+            new Rule("abli", 1, "e"),
+            new Rule("alli", 2, ""),
+            new Rule("entli", 2, ""),
+            new Rule("eli", 2, ""),
+            new Rule("ousli", 2, ""),
+            new Rule("ization", 5, "e"),
+            new Rule("ation", 3, "e"),
+            new Rule("ator", 2, "e"),
+            new Rule("alism", 3, ""),
+            new Rule("iveness", 4, ""),
+            new Rule("fulness", 4, ""),
+            new Rule("ousness", 4, ""),
+            new Rule("aliti", 3, ""),
+            new Rule("iviti", 3, "e"),
+            new Rule("biliti", 5, "le"));
+    private static final Rule[][] STEP3 = byLastLetter(
+            new Rule("icate", 3, ""),
+            new Rule("ative", 5, ""),
+            new Rule("alize", 3, ""),
+            new Rule("iciti", 3, ""),
+            new Rule("ical", 2, ""),
+            new Rule("ful", 3, ""),
+            new Rule("ness", 4, ""));
+    private static final Rule[][] STEP4 = byLastLetter(
+            new Rule("al", 2, ""),
+            new Rule("ance", 4, ""),
+            new Rule("ence", 4, ""),
+            new Rule("er", 2, ""),
+            new Rule("ic", 2, ""),
+            new Rule("able", 4, ""),
+            new Rule("ible", 4, ""),
+            new Rule("ant", 3, ""),
+            new Rule("ement", 5, ""),
+            new Rule("ment", 4, ""),
+            new Rule("ent", 3, ""),
+            new Rule("sion", 3, ""),
+            new Rule("tion", 3, ""),
+            new Rule("ou", 2, ""),
+            new Rule("ism", 3, ""),
+            new Rule("ate", 3, ""),
+            new Rule("iti", 3, ""),
+            new Rule("ous", 3, ""),
+            new Rule("ive", 3, ""),
+            new Rule("ize", 3, ""));
+
+    private char[] word = new char[32];
+    private int end;
 
-    /**
-     * Returns the stemed version of str
-     *
-     *@param str - word to stem
-     *
-     *@return If the word can not be stemmed or there
-     * is some sort of error str is returned.
-     */
-    public static String stem(String str)
-    {
-        try
-        {
-            String results = internalStem( str );
-            if (results != null)
-                return results;
-            else
-                return str;
+    public static String stem(String str) {
+        // Returns the stem of str, or str itself if it can not be stemmed
+
+        PorterStemmer stemmer = new PorterStemmer();
+        int length = stemmer.stem(str.toCharArray(), 0, str.length());
+        return new String(stemmer.word, 0, length);
+    }
+
+    public int stem(char[] chars, int start, int length) {
+        // Stem the word spanning chars[start, start + length) into the buffer and return the length of the stem, which
+        // is read from getBuffer(). The stem is never longer than the word, except for the empty word
+
+        if (word.length < Math.max(length, NO_TERM.length())) {
+            word = new char[Math.max(length, NO_TERM.length())];
         }
-        catch ( Throwable t ) // best way in Java to catch all
-        {
-            return str;
+        if (length == 0) {
+            NO_TERM.getChars(0, NO_TERM.length(), word, 0);
+            return NO_TERM.length();
         }
-    }
+        System.arraycopy(chars, start, word, 0, length);
+        end = length;
 
-    private static String internalStem(String str)
-    {
-        // check for zero length
-        if (str.length() > 0) {
-            // all characters must be letters
-            char[] c = str.toCharArray();
-            for (int i = 0; i < c.length; i++) {
-                if (!Character.isLetter(c[i]))
-                    return null;
+        // All characters must be letters
+        for (int idx = 0; idx < length; idx++) {
+            if (!Character.isLetter(word[idx])) {
+                return end;
             }
-        } else {
-            return "No term entered";
         }
 
-        str = step1a(str);
-        str = step1b(str);
-        str = step1c(str);
-        str = step2(str);
-        str = step3(str);
-        str = step4(str);
-        str = step5a(str);
-        str = step5b(str);
-        return str;
-    } // end stem
-
-    protected static String step1a (String str) {
-        // SSES -> SS
-        if (str.endsWith("sses")) {
-            return str.substring(0, str.length() - 2);
-            // IES -> I
-        } else if (str.endsWith("ies")) {
-            return str.substring(0, str.length() - 2);
-            // SS -> S
-        } else if (str.endsWith("ss")) {
-            return str;
-            // S ->
-        } else if (str.endsWith("s")) {
-            return str.substring(0, str.length() - 1);
-        } else {
-            return str;
+        step1a();
+        step1b();
+        step1c();
+        applyRules(STEP2, 0);
+        applyRules(STEP3, 0);
+        applyRules(STEP4, 1);
+        step5a();
+        step5b();
+        return end;
+    }
+
+    public char[] getBuffer() {
+        return word;
+    }
+
+    private void step1a() {
+        // SSES -> SS, IES -> I, SS -> SS, S ->
+
+        if (endsWith("sses") || endsWith("ies")) {
+            end -= 2;
+        } else if (!endsWith("ss") && endsWith("s")) {
+            end -= 1;
         }
-    } // end step1a
-
-    protected static String step1b (String str) {
-        // (m > 0) EED -> EE
-        if (str.endsWith("eed")) {
-            if (stringMeasure(str.substring(0, str.length() - 3)) > 0)
-                return str.substring(0, str.length() - 1);
-            else
-                return str;
-            // (*v*) ED ->
-        } else if ((str.endsWith("ed")) &&
-                (containsVowel(str.substring(0, str.length() - 2)))) {
-            return step1b2(str.substring(0, str.length() - 2));
-            // (*v*) ING ->
-        } else if ((str.endsWith("ing")) &&
-                (containsVowel(str.substring(0, str.length() - 3)))) {
-            return step1b2(str.substring(0, str.length() - 3));
-        } // end if
-        return str;
-    } // end step1b
-
-    protected static String step1b2 (String str) {
-        // AT -> ATE
-        if (str.endsWith("at") ||
-                str.endsWith("bl") ||
-                str.endsWith("iz")) {
-            return str + "e";
-        } else if ((endsWithDoubleConsonent(str)) &&
-                (!(str.endsWith("l") || str.endsWith("s") || str.endsWith("z")))) {
-            return str.substring(0, str.length() - 1);
-        } else if ((stringMeasure(str) == 1) &&
-                (endsWithCVC(str))) {
-            return str + "e";
-        } else {
-            return str;
+    }
+
+    private void step1b() {
+        // (m > 0) EED -> EE, (*v*) ED ->, (*v*) ING ->
+
+        if (endsWith("eed")) {
+            if (measure(end - 3) > 0) {
+                end -= 1;
+            }
+        } else if (endsWith("ed") && containsVowel(end - 2)) {
+            end -= 2;
+            step1b2();
+        } else if (endsWith("ing") && containsVowel(end - 3)) {
+            end -= 3;
+            step1b2();
         }
-    } // end step1b2
+    }
 
-    protected static String step1c(String str) {
+    private void step1b2() {
+        // AT -> ATE, BL -> BLE, IZ -> IZE, (*d and not (*L or *S or *Z)) -> single letter, (m = 1 and *o) -> E
+
+        if (endsWith("at") || endsWith("bl") || endsWith("iz")) {
+            word[end++] = 'e';
+        } else if (endsWithDoubleConsonant(end) && !(endsWith("l") || endsWith("s") || endsWith("z"))) {
+            end -= 1;
+        } else if (measure(end) == 1 && endsWithCVC(end)) {
+            word[end++] = 'e';
+        }
+    }
+
+    private void step1c() {
         // (*v*) Y -> I
-        if (str.endsWith("y")) {
-            if (containsVowel(str.substring(0, str.length() - 1)))
-                return str.substring(0, str.length() - 1) + "i";
-        } // end if
-        return str;
-    } // end step1c
-
-    protected static String step2 (String str) {
-        // (m > 0) ATIONAL -> ATE
-        if ((str.endsWith("ational")) &&
-                (stringMeasure(str.substring(0, str.length() - 5)) > 0)) {
-            return str.substring(0, str.length() - 5) + "e";
-            // (m > 0) TIONAL -> TION
-        } else if ((str.endsWith("tional")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) ENCI -> ENCE
-        } else if ((str.endsWith("enci")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) ANCI -> ANCE
-        } else if ((str.endsWith("anci")) &&
-                (stringMeasure(str.substring(0, str.length() - 1)) > 0)) {
-            return str.substring(0, str.length() - 1) + "e";
-            // (m > 0) IZER -> IZE
-        } else if ((str.endsWith("izer")) &&
-                (stringMeasure(str.substring(0, str.length() - 1)) > 0)) {
-            return str.substring(0, str.length() - 1);
-            // (m > 0) ABLI -> ABLE
-        } else if ((str.endsWith("abli")) &&
-                (stringMeasure(str.substring(0, str.length() - 1)) > 0)) {
-            return str.substring(0, str.length() - 1) + "e";
-            // (m > 0) ENTLI -> ENT
-        } else if ((str.endsWith("alli")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) ELI -> E
-        } else if ((str.endsWith("entli")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) OUSLI -> OUS
-        } else if ((str.endsWith("eli")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) IZATION -> IZE
-        } else if ((str.endsWith("ousli")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) IZATION -> IZE
-        } else if ((str.endsWith("ization")) &&
-                (stringMeasure(str.substring(0, str.length() - 5)) > 0)) {
-            return str.substring(0, str.length() - 5) + "e";
-            // (m > 0) ATION -> ATE
-        } else if ((str.endsWith("ation")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3) + "e";
-            // (m > 0) ATOR -> ATE
-        } else if ((str.endsWith("ator")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2) + "e";
-            // (m > 0) ALISM -> AL
-        } else if ((str.endsWith("alism")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) IVENESS -> IVE
-        } else if ((str.endsWith("iveness")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 0)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 0) FULNESS -> FUL
-        } else if ((str.endsWith("fulness")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 0)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 0) OUSNESS -> OUS
-        } else if ((str.endsWith("ousness")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 0)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 0) ALITII -> AL
-        } else if ((str.endsWith("aliti")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) IVITI -> IVE
-        } else if ((str.endsWith("iviti")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3) + "e";
-            // (m > 0) BILITI -> BLE
-        } else if ((str.endsWith("biliti")) &&
-                (stringMeasure(str.substring(0, str.length() - 5)) > 0)) {
-            return str.substring(0, str.length() - 5) + "le";
-        } // end if
-        return str;
-    } // end step2
-
-
-    protected static String step3 (String str) {
-        // (m > 0) ICATE -> IC
-        if ((str.endsWith("icate")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) ATIVE ->
-        } else if ((str.endsWith("ative")) &&
-                (stringMeasure(str.substring(0, str.length() - 5)) > 0)) {
-            return str.substring(0, str.length() - 5);
-            // (m > 0) ALIZE -> AL
-        } else if ((str.endsWith("alize")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) ICITI -> IC
-        } else if ((str.endsWith("iciti")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) ICAL -> IC
-        } else if ((str.endsWith("ical")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 0)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 0) FUL ->
-        } else if ((str.endsWith("ful")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 0)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 0) NESS ->
-        } else if ((str.endsWith("ness")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 0)) {
-            return str.substring(0, str.length() - 4);
-        } // end if
-        return str;
-    } // end step3
-
-
-    protected static String step4 (String str) {
-        if ((str.endsWith("al")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 1)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 1) ANCE ->
-        } else if ((str.endsWith("ance")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 1)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 1) ENCE ->
-        } else if ((str.endsWith("ence")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 1)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 1) ER ->
-        } else if ((str.endsWith("er")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 1)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 1) IC ->
-        } else if ((str.endsWith("ic")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 1)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 1) ABLE ->
-        } else if ((str.endsWith("able")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 1)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 1) IBLE ->
-        } else if ((str.endsWith("ible")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 1)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 1) ANT ->
-        } else if ((str.endsWith("ant")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) EMENT ->
-        } else if ((str.endsWith("ement")) &&
-                (stringMeasure(str.substring(0, str.length() - 5)) > 1)) {
-            return str.substring(0, str.length() - 5);
-            // (m > 1) MENT ->
-        } else if ((str.endsWith("ment")) &&
-                (stringMeasure(str.substring(0, str.length() - 4)) > 1)) {
-            return str.substring(0, str.length() - 4);
-            // (m > 1) ENT ->
-        } else if ((str.endsWith("ent")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) and (*S or *T) ION ->
-        } else if ((str.endsWith("sion") || str.endsWith("tion")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) OU ->
-        } else if ((str.endsWith("ou")) &&
-                (stringMeasure(str.substring(0, str.length() - 2)) > 1)) {
-            return str.substring(0, str.length() - 2);
-            // (m > 1) ISM ->
-        } else if ((str.endsWith("ism")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) ATE ->
-        } else if ((str.endsWith("ate")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) ITI ->
-        } else if ((str.endsWith("iti")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) OUS ->
-        } else if ((str.endsWith("ous")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) IVE ->
-        } else if ((str.endsWith("ive")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-            // (m > 1) IZE ->
-        } else if ((str.endsWith("ize")) &&
-                (stringMeasure(str.substring(0, str.length() - 3)) > 1)) {
-            return str.substring(0, str.length() - 3);
-        } // end if
-        return str;
-    } // end step4
-
-
-    protected static String step5a (String str) {
-        if (str.length() == 0) return str;  //gets rid of an exception...
-        // (m > 1) E ->
-        if ((stringMeasure(str.substring(0, str.length() - 1)) > 1) &&
-                str.endsWith("e"))
-            return str.substring(0, str.length() -1);
-            // (m = 1 and not *0) E ->
-        else if ((stringMeasure(str.substring(0, str.length() - 1)) == 1) &&
-                (!endsWithCVC(str.substring(0, str.length() - 1))) &&
-                (str.endsWith("e")))
-            return str.substring(0, str.length() - 1);
-        else
-            return str;
-    } // end step5a
-
-
-    protected static String step5b (String str) {
-        if (str.length() == 0) return str;
-        // (m > 1 and *d and *L) ->
-        if (str.endsWith("l") &&
-                endsWithDoubleConsonent(str) &&
-                (stringMeasure(str.substring(0, str.length() - 1)) > 1)) {
-            return str.substring(0, str.length() - 1);
-        } else {
-            return str;
+
+        if (endsWith("y") && containsVowel(end - 1)) {
+            word[end - 1] = 'i';
         }
-    } // end step5b
+    }
 
+    private void applyRules(Rule[][] rules, int minimumMeasure) {
+        // Apply the first rule whose suffix ends the word and whose measure is greater than minimumMeasure
 
-    /*
-       -------------------------------------------------------
-       The following are functions to help compute steps 1 - 5
-       -------------------------------------------------------
-    */
+        if (end == 0 || word[end - 1] < 'a' || word[end - 1] > 'z') {
+            return;
+        }
+        for (Rule rule : rules[word[end - 1] - 'a']) {
+            if (endsWith(rule.suffix) && measure(end - rule.cut) > minimumMeasure) {
+                end -= rule.cut;
+                rule.replacement.getChars(0, rule.replacement.length(), word, end);
+                end += rule.replacement.length();
+                return;
+            }
+        }
+    }
 
-    // does string end with 's'?
-    protected static boolean endsWithS(String str) {
-        return str.endsWith("s");
-    } // end function
+    private void step5a() {
+        // (m > 1) E ->, (m = 1 and not *o) E ->
 
-    // does string contain a vowel?
-    protected static boolean containsVowel(String str) {
-        char[] strchars = str.toCharArray();
-        for (int i = 0; i < strchars.length; i++) {
-            if (isVowel(strchars[i]))
-                return true;
+        if (end == 0 || !endsWith("e")) {
+            return;
         }
-        // no aeiou but there is y
-        if (str.indexOf('y') > -1)
-            return true;
-        else
-            return false;
-    } // end function
+        int measure = measure(end - 1);
+        if (measure > 1 || (measure == 1 && !endsWithCVC(end - 1))) {
+            end -= 1;
+        }
+    }
 
-    // is char a vowel?
-    public static boolean isVowel(char c) {
-        if ((c == 'a') ||
-                (c == 'e') ||
-                (c == 'i') ||
-                (c == 'o') ||
-                (c == 'u'))
-            return true;
-        else
+    private void step5b() {
+        // (m > 1 and *d and *L) -> single letter
+
+        if (end > 0 && endsWith("l") && endsWithDoubleConsonant(end) && measure(end - 1) > 1) {
+            end -= 1;
+        }
+    }
+
+    private boolean endsWith(String suffix) {
+        int offset = end - suffix.length();
+        if (offset < 0) {
             return false;
-    } // end function
-
-    // does string end with a double consonent?
-    protected static boolean endsWithDoubleConsonent(String str) {
-        if (str.length() < 2) return false;
-        char c = str.charAt(str.length() - 1);
-        if (c == str.charAt(str.length() - 2))
-            if (!containsVowel(str.substring(str.length() - 2))) {
+        }
+        for (int idx = 0; idx < suffix.length(); idx++) {
+            if (word[offset + idx] != suffix.charAt(idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean containsVowel(int length) {
+        // Does word[0, length) contain a vowel or a y?
+
+        for (int idx = 0; idx < length; idx++) {
+            if (isVowel(word[idx]) || word[idx] == 'y') {
                 return true;
             }
+        }
         return false;
-    } // end function
+    }
+
+    private boolean endsWithDoubleConsonant(int length) {
+        // Does word[0, length) end with the same consonant twice?
+
+        if (length < 2) {
+            return false;
+        }
+        char c = word[length - 1];
+        return c == word[length - 2] && !isVowel(c) && c != 'y';
+    }
+
+    private int measure(int length) {
+        // Number of vowel-consonant sequences in word[0, length)
 
-    // returns a CVC measure for the string
-    protected static int stringMeasure(String str) {
         int count = 0;
         boolean vowelSeen = false;
-        char[] strchars = str.toCharArray();
-
-        for (int i = 0; i < strchars.length; i++) {
-            if (isVowel(strchars[i])) {
+        for (int idx = 0; idx < length; idx++) {
+            if (isVowel(word[idx])) {
                 vowelSeen = true;
             } else if (vowelSeen) {
                 count++;
                 vowelSeen = false;
             }
-        } // end for
+        }
         return count;
-    } // end function
-
-    // does stem end with CVC?
-    protected static boolean endsWithCVC (String str) {
-        char c, v, c2 = ' ';
-        if (str.length() >= 3) {
-            c = str.charAt(str.length() - 1);
-            v = str.charAt(str.length() - 2);
-            c2 = str.charAt(str.length() - 3);
-        } else {
+    }
+
+    private boolean endsWithCVC(int length) {
+        // Does word[0, length) end with consonant-vowel-consonant, where the last consonant is not w, x or y?
+
+        if (length < 3) {
             return false;
         }
+        char c = word[length - 1];
+        return c != 'w' && c != 'x' && c != 'y' && !isVowel(c) && isVowel(word[length - 2]) && !isVowel(word[length - 3]);
+    }
 
-        if ((c == 'w') || (c == 'x') || (c == 'y')) {
-            return false;
-        } else if (isVowel(c)) {
-            return false;
-        } else if (!isVowel(v)) {
-            return false;
-        } else if (isVowel(c2)) {
-            return false;
-        } else {
-            return true;
+    private static Rule[][] byLastLetter(Rule... rules) {
+        // Group the rules of a step by the last letter of their suffix, keeping their order
+
+        Rule[][] byLastLetter = new Rule[26][];
+        for (char letter = 'a'; letter <= 'z'; letter++) {
+            ArrayList<Rule> letterRules = new ArrayList<>();
+            for (Rule rule : rules) {
+                if (rule.suffix.charAt(rule.suffix.length() - 1) == letter) {
+                    letterRules.add(rule);
+                }
+            }
+            byLastLetter[letter - 'a'] = letterRules.toArray(new Rule[0]);
         }
-    } // end function
+        return byLastLetter;
+    }
+
+    public static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    private static final class Rule {
+        private final String suffix;
+        private final int cut;
+        private final String replacement;
 
-} // end class
\ No newline at end of file
+        private Rule(String suffix, int cut, String replacement) {
+            this.suffix = suffix;
+            this.cut = cut;
+            this.replacement = replacement;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.nio.ByteBuffer;
+
+public class PositionsBuffer {
+    // Growable positions list, one entry per document in docId order: docId gap, tf and tf position gaps, all as
+    // variable-byte integers (see PostingsBuffer). The first position gap of a document is the position itself
+    // Every entry repeats its docId and tf, so the list can be read on its own without the postings of the term
+
+    private byte[] data;
+    private int length = 0;
+    private int lastDocId = 0;
+    private int lastPosition = 0;
+    private int documentFrequency = 0;
+
+    PositionsBuffer() {
+        this.data = new byte[8];
+    }
+
+    public void addPosting(int docId, int frequency) {
+        // Start the entry of a document, docIds must be added in increasing order and followed by frequency positions
+
+        writeVByte(docId - lastDocId);
+        writeVByte(frequency);
+        lastDocId = docId;
+        lastPosition = 0;
+        documentFrequency++;
+    }
+
+    public void addPosition(int position) {
+        // Append the next position of the current document, positions must be added in increasing order
+
+        writeVByte(position - lastPosition);
+        lastPosition = position;
+    }
+
+    public void copyPosting(PositionsIterator positions, int docId) {
+        // Append the current document of the iterator with all of its positions, stored under the given docId
+
+        int frequency = positions.frequency();
+        addPosting(docId, frequency);
+        for (int idx = 0; idx < frequency; idx++) {
+            addPosition(positions.nextPosition());
+        }
+    }
+
+    public PositionsIterator iterator() {
+        return new VBytePositionsIterator(ByteBuffer.wrap(data, 0, length), 0, documentFrequency);
+    }
+
+    public void reset() {
+        length = 0;
+        lastDocId = 0;
+        lastPosition = 0;
+        documentFrequency = 0;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    public int lastDocId() {
+        return lastDocId;
+    }
+
+    private void writeVByte(int value) {
+        if (length + 5 > data.length) {
+            byte[] grown = new byte[Math.max(data.length * 2, length + 5)];
+            System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+}
@@ -0,0 +1,7 @@
+public interface PositionsIterator extends PostingsIterator {
+    // Returned by nextPosition once every position of the current document has been read
+    int NO_MORE_POSITIONS = Integer.MAX_VALUE;
+
+    // Move to the next position of the term in the current document, positions are token offsets in increasing order
+    int nextPosition();
+}
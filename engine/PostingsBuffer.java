@@ -0,0 +1,74 @@
+import java.nio.ByteBuffer;
+
+public class PostingsBuffer {
+    // Growable postings list encoded as (docId gap, tf) pairs of variable-byte integers
+    // Each byte holds 7 bits of the value, lowest bits first, and the high bit is set when more bytes follow
+
+    private byte[] data;
+    private int length = 0;
+    private int lastDocId = 0;
+    private int documentFrequency = 0;
+    private long collectionFrequency = 0;
+
+    PostingsBuffer() {
+        this.data = new byte[8];
+    }
+
+    public void addPosting(int docId, int frequency) {
+        // Append a posting, docIds must be added in increasing order
+
+        writeVByte(docId - lastDocId);
+        writeVByte(frequency);
+        lastDocId = docId;
+        documentFrequency++;
+        collectionFrequency += frequency;
+    }
+
+    public PostingsIterator iterator() {
+        return new VBytePostingsIterator(ByteBuffer.wrap(data, 0, length), 0, documentFrequency);
+    }
+
+    public void reset() {
+        length = 0;
+        lastDocId = 0;
+        documentFrequency = 0;
+        collectionFrequency = 0;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return data.length;
+    }
+
+    public int lastDocId() {
+        return lastDocId;
+    }
+
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    public long collectionFrequency() {
+        return collectionFrequency;
+    }
+
+    private void writeVByte(int value) {
+        if (length + 5 > data.length) {
+            byte[] grown = new byte[Math.max(data.length * 2, length + 5)];
+            System.arraycopy(data, 0, grown, 0, length);
+            data = grown;
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+}
@@ -0,0 +1,19 @@
+public interface PostingsIterator {
+    // Returned by nextDoc/advance once the postings list is exhausted
+    int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    // Move to the next posting and return its docId
+    int nextDoc();
+
+    // Move to the first posting with a docId greater than or equal to target and return its docId
+    int advance(int target);
+
+    // docId of the current posting, -1 before the first call to nextDoc/advance
+    int docId();
+
+    // Number of occurrences of the term in the current document
+    int frequency();
+
+    // Number of documents in the postings list
+    int documentFrequency();
+}
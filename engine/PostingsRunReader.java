@@ -0,0 +1,109 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class PostingsRunReader {
+    // A run starts with its number of terms, followed by one entry per term in lexicographic order:
+    //   term byteLength, term (UTF-8), documentFrequency, collectionFrequency, byteLength, postings (variable-byte
+    //   encoded by PostingsBuffer)
+    // Runs of a positional index add byteLength, positions (encoded by PositionsBuffer) to every entry
+
+    private final DataInputStream runStream;
+    private final int runNumber;
+    private final boolean positional;
+    private int remainingTerms;
+    private byte[] termData = new byte[64];
+    private String term;
+    private int documentFrequency = 0;
+    private long collectionFrequency = 0;
+    private byte[] postingsData = new byte[64];
+    private int postingsLength = 0;
+    private byte[] positionsData = new byte[64];
+    private int positionsLength = 0;
+
+    PostingsRunReader(File runFile, int runNumber, boolean positional) throws IOException {
+        this.runStream = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+        this.runNumber = runNumber;
+        this.positional = positional;
+        this.remainingTerms = runStream.readInt();
+    }
+
+    public boolean nextTerm() throws IOException {
+        // Advance to the next term entry of the run and load its compressed postings, returns false once the run is exhausted
+
+        if (remainingTerms == 0) {
+            term = null;
+            return false;
+        }
+        remainingTerms--;
+        int termLength = runStream.readInt();
+        if (termLength > termData.length) {
+            termData = new byte[Math.max(termLength, termData.length * 2)];
+        }
+        runStream.readFully(termData, 0, termLength);
+        term = new String(termData, 0, termLength, StandardCharsets.UTF_8);
+        documentFrequency = runStream.readInt();
+        collectionFrequency = runStream.readLong();
+        postingsLength = runStream.readInt();
+        if (postingsLength > postingsData.length) {
+            postingsData = new byte[Math.max(postingsLength, postingsData.length * 2)];
+        }
+        runStream.readFully(postingsData, 0, postingsLength);
+        if (positional) {
+            positionsLength = runStream.readInt();
+            if (positionsLength > positionsData.length) {
+                positionsData = new byte[Math.max(positionsLength, positionsData.length * 2)];
+            }
+            runStream.readFully(positionsData, 0, positionsLength);
+        }
+        return true;
+    }
+
+    public PostingsIterator postings() {
+        // Iterator over the postings of the current term
+
+        return new VBytePostingsIterator(ByteBuffer.wrap(postingsData, 0, postingsLength), 0, documentFrequency);
+    }
+
+    public PositionsIterator positions() {
+        // Iterator over the positions of the current term, only for runs of a positional index
+
+        return new VBytePositionsIterator(ByteBuffer.wrap(positionsData, 0, positionsLength), 0, documentFrequency);
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public int getDocumentFrequency() {
+        return documentFrequency;
+    }
+
+    public long getCollectionFrequency() {
+        return collectionFrequency;
+    }
+
+    public byte[] getPostingsData() {
+        return postingsData;
+    }
+
+    public int getPostingsLength() {
+        return postingsLength;
+    }
+
+    public byte[] getPositionsData() {
+        return positionsData;
+    }
+
+    public int getPositionsLength() {
+        return positionsLength;
+    }
+
+    public int getRunNumber() {
+        return runNumber;
+    }
+
+    public void close() throws IOException {
+        runStream.close();
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class QueryBenchmark {
+    // Compares the evaluation strategies on a topics file: for each of them, the time taken by the queries (best of a few
+    // runs, after a warm-up run), the number of postings decoded, and whether the top documents and their scores are
+    // the same as those of exhaustive evaluation
+    private static final String[] STRATEGIES = {
+            QueryEvaluator.EXHAUSTIVE, QueryEvaluator.WAND, QueryEvaluator.BLOCK_MAX_WAND, QueryEvaluator.MAX_SCORE
+    };
+    private static final int DEFAULT_K = 10;
+    private static final int DEFAULT_RUNS = 5;
+
+    // Initialize data structures from index
+    static SegmentedIndex index;
+    static LengthNorms lengthNorms;
+
+    public static void main(String[] args) {
+        // Initialize program arguments
+        final String STORE_PATH = args[0];
+        final String QUERIES_FILENAME = args[1];
+        final boolean STEM = Boolean.parseBoolean(args[2]);
+        final int K = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_K;
+        final int RUNS = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_RUNS;
+
+        try {
+            index = SegmentedIndex.open(STORE_PATH, STEM);
+        } catch (IOException e) {
+            Logger.getLogger("QueryBenchmark").log(Level.SEVERE, e.toString());
+            return;
+        }
+        lengthNorms = index.lengthNorms(RankedQuery.k1, RankedQuery.b, false);
+
+        // Topics are read like BM25 does, a line with the topic id followed by a line with the query
+        ArrayList<String> queries = new ArrayList<>();
+        try {
+            String absolutePath = new File("").getAbsolutePath();
+            BufferedReader queriesBR = new BufferedReader(new FileReader(absolutePath + "/data/" + QUERIES_FILENAME));
+            while (queriesBR.readLine() != null) {
+                String query = queriesBR.readLine();
+                if (query != null) {
+                    queries.add(query);
+                }
+            }
+            queriesBR.close();
+        } catch (IOException e) {
+            Logger.getLogger("QueryBenchmark").log(Level.SEVERE, e.toString());
+            return;
+        }
+
+        // Tokens and phrase matches are prepared once, only the evaluation is timed
+        ArrayList<ArrayList<String>> queryTokens = new ArrayList<>();
+        ArrayList<IntIntHashMap> queryPhraseMatches = new ArrayList<>();
+        for (String query : queries) {
+            String queryText = PhraseQuery.removeOperators(query);
+            queryTokens.add(STEM ? DocumentUtils.tokenizeAndStem(queryText) : DocumentUtils.tokenize(queryText));
+            queryPhraseMatches.add(PhraseQuery.matchAll(PhraseQuery.parse(query, STEM), index));
+        }
+
+        // Every run evaluates the queries with every strategy in turn, so none of them benefits more from the JIT having
+        // warmed up the code they share. The first run is not timed
+        QueryEvaluator[] evaluators = new QueryEvaluator[STRATEGIES.length];
+        TopDocsCollector[][] results = new TopDocsCollector[STRATEGIES.length][queries.size()];
+        int[][] resultCounts = new int[STRATEGIES.length][queries.size()];
+        long[] decodedPostings = new long[STRATEGIES.length];
+        long[] bestNanos = new long[STRATEGIES.length];
+        for (int strategy = 0; strategy < STRATEGIES.length; strategy++) {
+            evaluators[strategy] = QueryEvaluator.forName(STRATEGIES[strategy]);
+            bestNanos[strategy] = Long.MAX_VALUE;
+        }
+        for (int run = 0; run <= RUNS; run++) {
+            for (int strategy = 0; strategy < STRATEGIES.length; strategy++) {
+                long runNanos = 0;
+                decodedPostings[strategy] = 0;
+                for (int idx = 0; idx < queries.size(); idx++) {
+                    long startTime = System.nanoTime();
+                    RankedQuery rankedQuery = RankedQuery.create(queryTokens.get(idx), index, lengthNorms, queryPhraseMatches.get(idx));
+                    TopDocsCollector collector = new TopDocsCollector(K);
+                    evaluators[strategy].evaluate(rankedQuery, collector);
+                    resultCounts[strategy][idx] = collector.sort();
+                    runNanos += System.nanoTime() - startTime;
+
+                    decodedPostings[strategy] += rankedQuery.getDecodedPostings();
+                    results[strategy][idx] = collector;
+                }
+                if (run > 0) {
+                    bestNanos[strategy] = Math.min(bestNanos[strategy], runNanos);
+                }
+            }
+        }
+
+        System.out.println(queries.size() + " queries, top " + K + ", best of " + RUNS + " runs");
+        System.out.println(String.format("%-12s %12s %14s %18s %10s", "strategy", "total ms", "ms per query", "postings decoded", "identical"));
+        for (int strategy = 0; strategy < STRATEGIES.length; strategy++) {
+            double totalMillis = bestNanos[strategy] / 1e6;
+            boolean identical = sameTopDocs(results[0], resultCounts[0], results[strategy], resultCounts[strategy]);
+            System.out.println(String.format("%-12s %12.1f %14.3f %18d %10s", STRATEGIES[strategy], totalMillis,
+                    totalMillis / Math.max(1, queries.size()), decodedPostings[strategy], identical ? "yes" : "NO"));
+        }
+    }
+
+    private static boolean sameTopDocs(TopDocsCollector[] expected, int[] expectedCounts, TopDocsCollector[] results,
+                                       int[] resultCounts) {
+        // Whether every query ranked the same documents with the same scores
+
+        for (int idx = 0; idx < expected.length; idx++) {
+            if (resultCounts[idx] != expectedCounts[idx]) {
+                return false;
+            }
+            for (int rank = 0; rank < expectedCounts[idx]; rank++) {
+                if (expected[idx].docId(rank) != results[idx].docId(rank) || expected[idx].score(rank) != results[idx].score(rank)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
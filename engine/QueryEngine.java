@@ -5,12 +5,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class QueryEngine {
-    // Initialize ranking algorithm constants and string constants
-    static final double k1 = 1.2;
-    static final double k2 = 7.0;
-    static final double b = 0.75;
-    static double AVG_DOC_LENGTH;
-    static double TOTAL_NUMBER_DOCS;
+    // Initialize string constants
     private static final String GRAPHIC_START_TAG = "<GRAPHIC>";
     private static final String GRAPHIC_END_TAG = "</GRAPHIC>";
     private static final String TEXT_START_TAG = "<TEXT>";
@@ -19,28 +14,33 @@ public class QueryEngine {
 
 
     // Initialize data structures from index
-    static ArrayList<Integer> documentLengths;
-    static Map<String, Integer> termToIdLexicon;
-    static Map<Integer, String> idToTermLexicon;
-    static Map<Integer, ArrayList<Integer>> invertedIndex;
-    static HashMap<Integer, String> internalIdToDocnoMap = new HashMap<>();
-    static HashMap<String, Integer> docnoToInternalIdMap = new HashMap<>();
-    private static HashMap<Integer, String[]> metadataDict = new HashMap<>();
+    static SegmentedIndex index;
+    static LengthNorms lengthNorms;
+    static QueryEvaluator evaluator = new WandEvaluator();
+    static TopDocsCollector collector = new TopDocsCollector(10);
+    static DocumentStore documentStore;
+    static DocnoTable docnoTable;
+    private static String[][] metadataDict;
 
     public static void main(String[] args) {
         storePath = args[0];
 
+        // Optional evaluation strategy, WAND by default
+        if (args.length > 1 && args[1].startsWith(QueryEvaluator.STRATEGY_OPTION)) {
+            evaluator = QueryEvaluator.forName(args[1].substring(QueryEvaluator.STRATEGY_OPTION.length()));
+            if (evaluator == null) {
+                Logger.getLogger("QueryEngine").log(Level.SEVERE, "Unknown evaluation strategy: " + args[1]);
+                return;
+            }
+        }
+
         initializeObjects(storePath);
         initializeMappingDict(storePath);
         initializeMetadataDict(storePath);
 
-        // Calculate average document length and total number of documents for BM25 algorithm
-        double runningSum = 0.0;
-        for (int length : documentLengths) {
-            runningSum += length;
-        }
-        AVG_DOC_LENGTH = runningSum / documentLengths.size();
-        TOTAL_NUMBER_DOCS = internalIdToDocnoMap.size();
+        // Length normalization of every document for BM25 algorithm, computed once from the average document length
+        // stored in the index
+        lengthNorms = index.lengthNorms(RankedQuery.k1, RankedQuery.b, false);
 
         // User input flow
         while (true) {
@@ -54,7 +54,7 @@ public class QueryEngine {
 
             // Execute query and calculate total time in seconds
             long startTime = System.currentTimeMillis();
-            ArrayList<Integer> results = executeBM25Retrieval(query);
+            IntArrayList results = executeBM25Retrieval(query);
             long endTime = System.currentTimeMillis();
             double totalSeconds = (endTime - startTime) / 1000.0;
             System.out.println("Query retrieval took " + totalSeconds + " seconds.");
@@ -98,133 +98,49 @@ public class QueryEngine {
         }
     }
 
-    public static ArrayList<Integer> executeBM25Retrieval(String query) {
+    public static IntArrayList executeBM25Retrieval(String query) {
         // Given a query, run the BM25 ranking algorithm on the LATimes document collection
 
-        // Tokenize query
-        ArrayList<String> tokens = DocumentUtils.tokenize(query);
-
-        // Initialize accumulator
-        HashMap<Integer, Double> accumulator = new HashMap<>();
-
-        // Initialize priority queue, sort by max score
-        PriorityQueue<double[]> priorityQueue = new PriorityQueue<>((a, b) -> {
-            double scoreA = a[1];
-            double scoreB = b[1];
-            return -1 * Double.compare(scoreA, scoreB);
-        });
-
-        ArrayList<Integer> tokenIds = new ArrayList<>();
-        HashMap<Integer, Integer> queryTermFrequency = new HashMap<>();
-
-        // Convert tokens to token ID's and populate the query term frequency map
-        for (String token : tokens) {
-            if (termToIdLexicon.containsKey(token)) {
-                tokenIds.add(termToIdLexicon.get(token));
-
-                int id = termToIdLexicon.get(token);
-                if (!queryTermFrequency.containsKey(id)) {
-                    queryTermFrequency.put(id, 1);
-                } else {
-                    queryTermFrequency.put(id, queryTermFrequency.get(id) + 1);
-                }
-            }
-        }
-
-        // Term-at-a-time algorithm
-        for (int id : tokenIds) {
-
-            // Fetch postings list from inverted index
-            ArrayList<Integer> postings = invertedIndex.get(id);
-            int iterator = 0;
-
-            // Loop through the postings list
-            while (iterator < postings.size()) {
-                int docId = postings.get(iterator);
-                int count = postings.get(iterator + 1);
-                int numDocumentsWithTerm = postings.size() / 2;
-
-                double K = calculateK(docId);
-                double tfDoc = calculateTFDoc(K, count);
-                double tfQuery = calculateTFQuery(queryTermFrequency.get(id));
-                double idf = calculateIDF(numDocumentsWithTerm);
-
-                // Compute partial score
-                double score = idf * tfQuery * tfDoc;
-
-                // Update accumulator score for doc
-                if (!accumulator.containsKey(docId)) {
-                    accumulator.put(docId, score);
-                } else {
-                    accumulator.put(docId, accumulator.get(docId) + score);
-                }
-                iterator += 2;
-            }
-        }
-
-        // Add document scores to priority queue
-        for (int key : accumulator.keySet()) {
-            double[] docScorePair = new double[2];
-            docScorePair[0] = key;
-            docScorePair[1] = accumulator.get(key);
-            priorityQueue.add(docScorePair);
-        }
+        // Tokenize query like the documents of the index variant that was opened
+        // The terms of quoted phrases are ranked like the other terms, the phrases only filter the documents
+        String queryText = PhraseQuery.removeOperators(query);
+        ArrayList<String> tokens = index.isStemmed() ? DocumentUtils.tokenizeAndStem(queryText) : DocumentUtils.tokenize(queryText);
+        IntIntHashMap phraseMatches = PhraseQuery.matchAll(PhraseQuery.parse(query, index.isStemmed()), index);
 
-        int rank = 1;
+        // Collect the top 10 documents for the query with the chosen evaluation strategy, the collector is reused from
+        // one query to the next
+        RankedQuery rankedQuery = RankedQuery.create(tokens, index, lengthNorms, phraseMatches);
+        collector.reset();
+        evaluator.evaluate(rankedQuery, collector);
+        int resultCount = collector.sort();
 
-        ArrayList<Integer> result = new ArrayList<>();
+        IntArrayList result = new IntArrayList();
 
         // Inform user no results found
-        if(priorityQueue.isEmpty()) {
+        if (resultCount == 0) {
             System.out.println("No results found for query: " + query);
             System.out.println("_____________________");
             System.out.println("\n");
             return null;
         }
 
-        // Take top 10 documents or until priority queue is empty
-        while (rank <= 10 && !priorityQueue.isEmpty()) {
-            double[] pair = priorityQueue.remove();
-            int docId = (int) pair[0];
+        // Output the top 10 documents, or every document that was scored if there are fewer
+        for (int rank = 1; rank <= resultCount; rank++) {
+            int docId = collector.docId(rank - 1);
             result.add(docId);
             outputResult(rank, docId, tokens);
-            rank++;
         }
 
         return result;
     }
 
-    private static double calculateK(int docId) {
-        // Calculates the K value
-
-        return k1 * ((1 - b) + (b * (documentLengths.get(docId) / AVG_DOC_LENGTH)));
-    }
-
-    private static double calculateTFDoc(double K, int tfInDoc) {
-        // Calculates the term frequency for the document
-
-        return ((k1 + 1) * tfInDoc) / (tfInDoc + K);
-    }
-
-    private static double calculateTFQuery(int tfInQuery) {
-        // Calculates the term frequency for the query
-
-        return ((k2 + 1) * tfInQuery) / (k2 + tfInQuery);
-    }
-
-    private static double calculateIDF(int numDocumentsWithTerm) {
-        // Calculates the inverse document frequency for the term
-
-        return Math.log((TOTAL_NUMBER_DOCS - numDocumentsWithTerm + 0.5) / (numDocumentsWithTerm + 0.5));
-    }
-
     private static void outputResult(int rank, int docId, ArrayList<String> queryTokens) {
         // Output ranking results
 
-        String docno = metadataDict.get(docId)[0];
-        String date = metadataDict.get(docId)[1];
-        String headline = metadataDict.get(docId)[2];
-        String summary = generateQueryBiasedSummary(date, docno, queryTokens);
+        String docno = metadataDict[docId][0];
+        String date = metadataDict[docId][1];
+        String headline = metadataDict[docId][2];
+        String summary = generateQueryBiasedSummary(docId, queryTokens);
 
         // Check if headline exists
         if (headline.equals("")) {
@@ -245,23 +161,13 @@ public class QueryEngine {
         return date.substring(0, 2) + "/" + date.substring(2, 4) + "/" + date.substring(4, 6);
     }
 
-    private static String generateQueryBiasedSummary(String date, String docno, ArrayList<String> queryTokens) {
+    private static String generateQueryBiasedSummary(int docId, ArrayList<String> queryTokens) {
         // Generate query biased summary given a query and a document
 
         // Fetch raw document
         ArrayList<String> rawDocument = new ArrayList<>();
         try {
-            String month = date.substring(0, 2);
-            String day = date.substring(2, 4);
-            String year = date.substring(4, 6);
-            File rawDocumentFile = new File(storePath + "/" + year + "/" + month + "/" + day + "/" + docno + ".txt");
-            BufferedReader rawDocumentReader = new BufferedReader(new FileReader(rawDocumentFile));
-            String documentLine = rawDocumentReader.readLine();
-
-            while (documentLine != null) {
-                rawDocument.add(documentLine);
-                documentLine = rawDocumentReader.readLine();
-            }
+            rawDocument = documentStore.getDocument(docId);
         } catch (IOException e) {
             Logger.getLogger("DocumentFetcher").log(Level.SEVERE, e.toString());
         }
@@ -306,7 +212,7 @@ public class QueryEngine {
 
         // Calculate score for each sentence and add to priority queue
         for (int sentenceIdx = 0; sentenceIdx < sentences.length; sentenceIdx++) {
-            ArrayList<String> tokenizedSentence = DocumentUtils.tokenize(sentences[sentenceIdx]);
+            ArrayList<String> tokenizedSentence = index.isStemmed() ? DocumentUtils.tokenizeAndStem(sentences[sentenceIdx]) : DocumentUtils.tokenize(sentences[sentenceIdx]);
 
             // Ignore sentences with less than 5 words
             if (tokenizedSentence.size() < 5) {
@@ -386,22 +292,10 @@ public class QueryEngine {
 
     private static void displayRawDocument(int docId) {
         // Given a document internal ID, output the raw document
-        String docno = internalIdToDocnoMap.get(docId);
-        String date = metadataDict.get(docId)[1];
 
         ArrayList<String> rawDocument = new ArrayList<>();
         try {
-            String month = date.substring(0, 2);
-            String day = date.substring(2, 4);
-            String year = date.substring(4, 6);
-            File rawDocumentFile = new File(storePath + "/" + year + "/" + month + "/" + day + "/" + docno + ".txt");
-            BufferedReader rawDocumentReader = new BufferedReader(new FileReader(rawDocumentFile));
-            String documentLine = rawDocumentReader.readLine();
-
-            while (documentLine != null) {
-                rawDocument.add(documentLine);
-                documentLine = rawDocumentReader.readLine();
-            }
+            rawDocument = documentStore.getDocument(docId);
         } catch (IOException e) {
             Logger.getLogger("DocumentFetcher").log(Level.SEVERE, e.toString());
         }
@@ -412,57 +306,24 @@ public class QueryEngine {
     }
 
     private static void initializeObjects(String store_path) {
-        // Initializes data saved in FS (lexicon dicts, inverted index, metadata, document lengths)
+        // Opens the index saved in FS (lexicon, inverted index, document lengths)
 
         try {
-            FileInputStream fis = new FileInputStream(store_path + "/termToIdLexicon.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            termToIdLexicon = (HashMap) ois.readObject();
-
-            fis = new FileInputStream(store_path + "/idToTermLexicon.ser");
-            ois = new ObjectInputStream(fis);
-            idToTermLexicon = (HashMap) ois.readObject();
-
-            System.out.println("Lexicons Loaded");
+            // The unstemmed variant is preferred, a store with only a stemmed index is searched with stemmed queries
+            index = SegmentedIndex.open(store_path, false);
+            documentStore = DocumentStore.open(store_path);
 
-            fis = new FileInputStream(store_path + "/documentLengths.ser");
-            ois = new ObjectInputStream(fis);
-            documentLengths = (ArrayList<Integer>) ois.readObject();
-
-            System.out.println("Document Lengths Loaded");
-
-            fis = new FileInputStream(store_path + "/invertedIndex.ser");
-            ois = new ObjectInputStream(fis);
-            invertedIndex = (HashMap) ois.readObject();
-
-            System.out.println("Inverted Index Loaded");
-
-            ois.close();
-            fis.close();
-        } catch (IOException | ClassNotFoundException e) {
+            System.out.println("Index Loaded");
+        } catch (IOException e) {
             Logger.getLogger("BM25").log(Level.SEVERE, e.toString());
         }
     }
 
     private static void initializeMappingDict(String storePath) {
-        // Reads mapping file and creates dictionaries internal id -> DOCNO and DOCNO -> internal id
+        // Reads mapping file into the internal id <-> DOCNO table
 
         try {
-            File mappingFile = new File(storePath + "/IDMapping.txt");
-            BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
-
-            String mappingLine = mappingReader.readLine();
-
-            while (mappingLine != null) {
-                String[] mappings = mappingLine.split(" ");
-                int internalId = Integer.parseInt(mappings[0]);
-                String docno = mappings[1];
-
-                internalIdToDocnoMap.put(internalId, docno);
-                docnoToInternalIdMap.put(docno, internalId);
-
-                mappingLine = mappingReader.readLine();
-            }
+            docnoTable = DocnoTable.read(storePath);
 
             System.out.println("Mapping Dictionaries Loaded");
         } catch (IOException e) {
@@ -474,6 +335,7 @@ public class QueryEngine {
         // Reads metadata file and creates dictionary internal id -> metadata
 
         try {
+            metadataDict = new String[docnoTable.size()][];
             File mappingFile = new File(storePath + "/metadata.txt");
             BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
             String mappingLine = mappingReader.readLine();
@@ -486,10 +348,7 @@ public class QueryEngine {
                 mappingLine = mappingReader.readLine();
 
                 // value of dictionary is a string array of size three
-                metadataDict.put(id, new String[3]);
-                metadataDict.get(id)[0] = docno;
-                metadataDict.get(id)[1] = date;
-                metadataDict.get(id)[2] = headline;
+                metadataDict[id] = new String[]{docno, date, headline};
             }
             System.out.println("Metadata Dictionary Loaded");
         } catch (IOException e) {
@@ -0,0 +1,29 @@
+public interface QueryEvaluator {
+    // A strategy to find the top documents of a ranked query
+    // Every strategy collects the same top k documents with the same scores, they only differ in how many postings
+    // they decode to find them
+    String EXHAUSTIVE = "exhaustive";
+    String WAND = "wand";
+    String BLOCK_MAX_WAND = "bmw";
+    String MAX_SCORE = "maxscore";
+    String STRATEGY_OPTION = "--strategy=";
+
+    // Collect every document of the index that could be among the top documents of the query
+    void evaluate(RankedQuery query, TopDocsCollector collector);
+
+    // Evaluator for a strategy name, null if there is no such strategy
+    static QueryEvaluator forName(String name) {
+        switch (name) {
+            case EXHAUSTIVE:
+                return new ExhaustiveEvaluator();
+            case WAND:
+                return new WandEvaluator();
+            case BLOCK_MAX_WAND:
+                return new BlockMaxWandEvaluator();
+            case MAX_SCORE:
+                return new MaxScoreEvaluator();
+            default:
+                return null;
+        }
+    }
+}
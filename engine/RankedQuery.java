@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+
+public class RankedQuery {
+    // A BM25 query ready to be evaluated: its distinct terms, the term of every query token, and what is fixed for the
+    // whole query, the weight of every term (idf times the query term frequency factor) and the document length norms
+    // The score of a document adds the score of the term of every token in query order, so a term repeated in the query
+    // counts once per occurrence, and every evaluation strategy adds up the same values in the same order
+    static final double k1 = 1.2;
+    static final double k2 = 7.0;
+    static final double b = 0.75;
+    // Upper bounds are raised by this fraction so a sum of upper bounds added up in another order than a score never
+    // rounds below it, and so are partial scores added up in another order
+    static final double UPPER_BOUND_SLACK = 1e-9;
+
+    final SegmentedIndex index;
+    final LengthNorms lengthNorms;
+    final String[] terms;
+    final int[] tokenTerms;
+    final int[] queryFrequencies;
+    final double[] weights;
+    private final IntIntHashMap phraseMatches;
+    private long decodedPostings = 0;
+
+    private RankedQuery(SegmentedIndex index, LengthNorms lengthNorms, String[] terms, int[] tokenTerms,
+                        int[] queryFrequencies, IntIntHashMap phraseMatches) {
+        this.index = index;
+        this.lengthNorms = lengthNorms;
+        this.terms = terms;
+        this.tokenTerms = tokenTerms;
+        this.queryFrequencies = queryFrequencies;
+        this.phraseMatches = phraseMatches;
+
+        // The idf and query term frequency factors of a term are the same for all of its postings, the idf is stored
+        // in the index
+        this.weights = new double[terms.length];
+        for (int term = 0; term < terms.length; term++) {
+            weights[term] = index.idf(terms[term]) * queryFrequencyFactor(queryFrequencies[term]);
+        }
+    }
+
+    static RankedQuery create(ArrayList<String> tokens, SegmentedIndex index, LengthNorms lengthNorms, IntIntHashMap phraseMatches) {
+        // Query over the tokens found in the index, ranking only the documents in phraseMatches unless it is null
+        // Every segment has its own term ids, so a query term is identified by its position in terms
+
+        ArrayList<String> queryTerms = new ArrayList<>();
+        IntArrayList tokenTerms = new IntArrayList();
+        IntIntHashMap queryTermFrequency = new IntIntHashMap();
+        for (String token : tokens) {
+            int term = queryTerms.indexOf(token);
+            if (term < 0 && index.documentFrequency(token) > 0) {
+                term = queryTerms.size();
+                queryTerms.add(token);
+            }
+            if (term >= 0) {
+                tokenTerms.add(term);
+                queryTermFrequency.addTo(term, 1);
+            }
+        }
+
+        int[] queryFrequencies = new int[queryTerms.size()];
+        for (int term = 0; term < queryFrequencies.length; term++) {
+            queryFrequencies[term] = queryTermFrequency.get(term, 0);
+        }
+        return new RankedQuery(index, lengthNorms, queryTerms.toArray(new String[0]), tokenTerms.toArray(), queryFrequencies, phraseMatches);
+    }
+
+    public boolean accepts(int internalId) {
+        // Whether the document may be ranked at all, it has to match every phrase of the query
+        return phraseMatches == null || phraseMatches.containsKey(internalId);
+    }
+
+    public double termScore(int term, int internalId, int frequency) {
+        // Score added by one occurrence of the term in the query to a document in which it occurs frequency times
+
+        return weights[term] * termFrequencyFactor(lengthNorms.get(internalId), frequency);
+    }
+
+    public double sumInQueryOrder(double[] termScores, boolean[] matchedTerms) {
+        // Score of a document from the scores of the terms it contains, added up as term-at-a-time evaluation does
+
+        double score = 0;
+        for (int term : tokenTerms) {
+            if (matchedTerms[term]) {
+                score += termScores[term];
+            }
+        }
+        return score;
+    }
+
+    public double upperBound(int term, int maxFrequency, int minDocumentLength) {
+        // Highest score the term adds to a document, counting every occurrence in the query, over the postings where its
+        // tf is at most maxFrequency and the document at least minDocumentLength long
+        // A term with a negative weight is bounded by 0, the score of a document without it
+
+        if (weights[term] <= 0) {
+            return 0;
+        }
+        double score = weights[term] * termFrequencyFactor(lengthNorms.forLength(minDocumentLength), maxFrequency);
+        return queryFrequencies[term] * score * (1 + UPPER_BOUND_SLACK);
+    }
+
+    public void addDecodedPostings(long postings) {
+        // Evaluators count the postings they decode, to compare strategies
+        decodedPostings += postings;
+    }
+
+    public long getDecodedPostings() {
+        return decodedPostings;
+    }
+
+    static double termFrequencyFactor(double K, int tfInDoc) {
+        // Calculates the term frequency for the document
+
+        return ((k1 + 1) * tfInDoc) / (tfInDoc + K);
+    }
+
+    static double queryFrequencyFactor(int tfInQuery) {
+        // Calculates the term frequency for the query
+
+        return ((k2 + 1) * tfInQuery) / (k2 + tfInQuery);
+    }
+}
@@ -0,0 +1,282 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class SPIMIIndexer {
+    // Rough heap cost of a term in the in-memory block (dictionary entry, term string and PostingsBuffer), used to decide
+    // when a run has to be flushed. The compressed postings themselves are accounted for by their buffer capacity
+    private static final long BYTES_PER_TERM = 160;
+    private static final String RUN_PREFIX = "run-";
+    private static final String RUN_SUFFIX = ".bin";
+
+    private final File runDirectory;
+    private final long memoryBudgetBytes;
+    private final boolean positional;
+    private final ArrayList<File> runFiles = new ArrayList<>();
+    // The block is keyed by dense local term ids, so documents are counted in an IntIntHashMap and postings are
+    // found by array index. Local ids only live until the block is flushed
+    // Tokens are looked up as spans of the tokenizer's buffer, only new terms of the block are turned into Strings
+    private final TermTable terms = new TermTable(1 << 16);
+    private final ArrayList<PostingsBuffer> postingsByTermId = new ArrayList<>();
+    private final ArrayList<PositionsBuffer> positionsByTermId = new ArrayList<>();
+    private long estimatedBytes = 0;
+
+    SPIMIIndexer(String runPath, long memoryBudgetBytes, boolean positional) {
+        this.runDirectory = new File(runPath);
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.positional = positional;
+        runDirectory.mkdirs();
+    }
+
+    public int getTermId(char[] chars, int start, int length) {
+        // Local id of the term spanning chars[start, start + length) in the current block, adding the term if it has not
+        // been seen since the last flush
+
+        int termId = terms.get(chars, start, length);
+        if (termId < 0) {
+            termId = terms.add(chars, start, length);
+            addBuffers();
+        }
+        return termId;
+    }
+
+    public int getTermId(String term) {
+        // Local id of a term in the current block, adding the term if it has not been seen since the last flush
+
+        int termId = terms.get(term);
+        if (termId < 0) {
+            termId = terms.add(term);
+            addBuffers();
+        }
+        return termId;
+    }
+
+    public void addPostings(IntIntHashMap wordCounts, IntArrayList tokenTermIds, int internalId) throws IOException {
+        // Add the document internal id/number of occurrences to the in-memory block for every local term id of the document
+        // tokenTermIds holds the local term id of every token of the document in order, its positions are only kept
+        // by a positional indexer
+        // The terms of the document are found from its tokens rather than by scanning wordCounts, whose table keeps the
+        // size of the longest document seen, and a term already given the posting of this document is skipped
+        // Once the estimated size of the block exceeds the memory budget, it is flushed to disk as a sorted run
+
+        for (int position = 0; position < tokenTermIds.size(); position++) {
+            int termId = tokenTermIds.get(position);
+            PostingsBuffer postings = postingsByTermId.get(termId);
+            if (postings.documentFrequency() == 0 || postings.lastDocId() != internalId) {
+                int capacity = postings.capacity();
+                postings.addPosting(internalId, wordCounts.get(termId, 0));
+                estimatedBytes += postings.capacity() - capacity;
+            }
+        }
+
+        if (positional) {
+            for (int position = 0; position < tokenTermIds.size(); position++) {
+                int termId = tokenTermIds.get(position);
+                PositionsBuffer positions = positionsByTermId.get(termId);
+                int capacity = positions.capacity();
+                if (positions.documentFrequency() == 0 || positions.lastDocId() != internalId) {
+                    positions.addPosting(internalId, wordCounts.get(termId, 0));
+                }
+                positions.addPosition(position);
+                estimatedBytes += positions.capacity() - capacity;
+            }
+        }
+
+        if (estimatedBytes >= memoryBudgetBytes) {
+            flushRun();
+        }
+    }
+
+    public void flushRun() throws IOException {
+        // Write the in-memory block to disk sorted by term and start a new, empty block
+
+        if (terms.isEmpty()) {
+            return;
+        }
+
+        File runFile = new File(runDirectory, RUN_PREFIX + runFiles.size() + RUN_SUFFIX);
+        Logger.getLogger("SPIMIIndexer").log(Level.INFO, "Flushing " + terms.size() + " terms to " + runFile.getPath() + "...");
+
+        String[] sortedTerms = new String[terms.size()];
+        for (int termId = 0; termId < sortedTerms.length; termId++) {
+            sortedTerms[termId] = terms.getTerm(termId);
+        }
+        Arrays.sort(sortedTerms, Lexicon::compareTerms);
+
+        DataOutputStream runStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16));
+        runStream.writeInt(sortedTerms.length);
+        for (String term : sortedTerms) {
+            int termId = terms.get(term);
+            PostingsBuffer postings = postingsByTermId.get(termId);
+            // Terms are not bounded in length, so they are written as an int length and UTF-8 bytes like in the index
+            byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+            runStream.writeInt(termBytes.length);
+            runStream.write(termBytes);
+            runStream.writeInt(postings.documentFrequency());
+            runStream.writeLong(postings.collectionFrequency());
+            runStream.writeInt(postings.length());
+            runStream.write(postings.getData(), 0, postings.length());
+            if (positional) {
+                PositionsBuffer positions = positionsByTermId.get(termId);
+                runStream.writeInt(positions.length());
+                runStream.write(positions.getData(), 0, positions.length());
+            }
+        }
+        runStream.close();
+
+        runFiles.add(runFile);
+        terms.clear();
+        postingsByTermId.clear();
+        positionsByTermId.clear();
+        estimatedBytes = 0;
+    }
+
+    private void addBuffers() {
+        // Create the postings (and positions) of the term added last
+
+        PostingsBuffer postings = new PostingsBuffer();
+        postingsByTermId.add(postings);
+        estimatedBytes += BYTES_PER_TERM + postings.capacity();
+        if (positional) {
+            PositionsBuffer positions = new PositionsBuffer();
+            positionsByTermId.add(positions);
+            estimatedBytes += positions.capacity();
+        }
+    }
+
+    public static void mergeRuns(List<SPIMIIndexer> indexers, IndexWriter indexWriter) throws IOException {
+        // k-way merge the runs of every indexer into the final index, encoding the postings with the writer's codec
+        // Term ids are assigned in lexicon order while merging, so they do not depend on which worker saw a term first
+        // The indexers and the writer must agree on whether positions are kept
+
+        ArrayList<File> runFiles = new ArrayList<>();
+        for (SPIMIIndexer indexer : indexers) {
+            indexer.flushRun();
+            runFiles.addAll(indexer.runFiles);
+        }
+        Logger.getLogger("SPIMIIndexer").log(Level.INFO, "Merging " + runFiles.size() + " runs...");
+
+        PriorityQueue<PostingsRunReader> heap = new PriorityQueue<>((reader1, reader2) -> {
+            int comparison = Lexicon.compareTerms(reader1.getTerm(), reader2.getTerm());
+            return comparison != 0 ? comparison : Integer.compare(reader1.getRunNumber(), reader2.getRunNumber());
+        });
+
+        for (int runNumber = 0; runNumber < runFiles.size(); runNumber++) {
+            PostingsRunReader reader = new PostingsRunReader(runFiles.get(runNumber), runNumber, indexWriter.isPositional());
+            if (reader.nextTerm()) {
+                heap.add(reader);
+            } else {
+                reader.close();
+            }
+        }
+
+        ArrayList<PostingsRunReader> sameTermReaders = new ArrayList<>();
+        PostingsBuffer mergedPostings = new PostingsBuffer();
+        PositionsBuffer mergedPositions = new PositionsBuffer();
+
+        while (!heap.isEmpty()) {
+            // Pop every run positioned on the smallest term
+            String term = heap.peek().getTerm();
+            while (!heap.isEmpty() && heap.peek().getTerm().equals(term)) {
+                sameTermReaders.add(heap.remove());
+            }
+
+            if (sameTermReaders.size() > 1) {
+                // Runs of different workers hold interleaved documents, so their postings are merged by docId
+                mergePostings(sameTermReaders, mergedPostings);
+                indexWriter.addTerm(term, mergedPostings.iterator());
+            } else if (indexWriter.getCodec() == IndexFormat.VBYTE_CODEC) {
+                // The compressed postings of a term found in a single run can be copied as they are
+                PostingsRunReader reader = sameTermReaders.get(0);
+                indexWriter.addTerm(term, reader.getDocumentFrequency(), reader.getCollectionFrequency(), reader.getPostingsData(), reader.getPostingsLength());
+            } else {
+                indexWriter.addTerm(term, sameTermReaders.get(0).postings());
+            }
+
+            if (indexWriter.isPositional()) {
+                if (sameTermReaders.size() > 1) {
+                    mergePositions(sameTermReaders, mergedPositions);
+                    indexWriter.addPositions(mergedPositions.getData(), mergedPositions.length());
+                } else {
+                    PostingsRunReader reader = sameTermReaders.get(0);
+                    indexWriter.addPositions(reader.getPositionsData(), reader.getPositionsLength());
+                }
+            }
+
+            for (PostingsRunReader reader : sameTermReaders) {
+                if (reader.nextTerm()) {
+                    heap.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            sameTermReaders.clear();
+        }
+
+        for (SPIMIIndexer indexer : indexers) {
+            indexer.deleteRuns();
+        }
+    }
+
+    private static void mergePostings(ArrayList<PostingsRunReader> readers, PostingsBuffer mergedPostings) {
+        // Merge the postings of the same term from several runs into one list ordered by docId
+
+        mergedPostings.reset();
+        PostingsIterator[] postings = new PostingsIterator[readers.size()];
+        for (int idx = 0; idx < postings.length; idx++) {
+            postings[idx] = readers.get(idx).postings();
+            postings[idx].nextDoc();
+        }
+
+        while (true) {
+            PostingsIterator next = null;
+            for (PostingsIterator iterator : postings) {
+                if (iterator.docId() != PostingsIterator.NO_MORE_DOCS && (next == null || iterator.docId() < next.docId())) {
+                    next = iterator;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            mergedPostings.addPosting(next.docId(), next.frequency());
+            next.nextDoc();
+        }
+    }
+
+    private static void mergePositions(ArrayList<PostingsRunReader> readers, PositionsBuffer mergedPositions) {
+        // Merge the positions of the same term from several runs into one list ordered by docId
+
+        mergedPositions.reset();
+        PositionsIterator[] positions = new PositionsIterator[readers.size()];
+        for (int idx = 0; idx < positions.length; idx++) {
+            positions[idx] = readers.get(idx).positions();
+            positions[idx].nextDoc();
+        }
+
+        while (true) {
+            PositionsIterator next = null;
+            for (PositionsIterator iterator : positions) {
+                if (iterator.docId() != PostingsIterator.NO_MORE_DOCS && (next == null || iterator.docId() < next.docId())) {
+                    next = iterator;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            mergedPositions.copyPosting(next, next.docId());
+            next.nextDoc();
+        }
+    }
+
+    private void deleteRuns() {
+        // Remove the temporary run files once they have been merged
+
+        for (File runFile : runFiles) {
+            runFile.delete();
+        }
+        runFiles.clear();
+        runDirectory.delete();
+    }
+}
@@ -0,0 +1,74 @@
+public class ScoreAccumulator {
+    // Scores of the documents found by term-at-a-time evaluation, reused from one query to the next by every thread
+    // Queries reaching many documents add up their scores in an array indexed by internal id, and the documents they
+    // touched are listed so only those are cleared before the next query. Queries reaching few documents use an
+    // open-addressing map instead, which stays small enough to be cleared at once
+    // Once the buffers have grown to the largest query of the thread, evaluating a query allocates nothing here
+    private static final ThreadLocal<ScoreAccumulator> SCRATCH = ThreadLocal.withInitial(ScoreAccumulator::new);
+    // A query is scored densely once its postings reach this fraction of the documents
+    private static final int DENSE_FRACTION = 32;
+
+    private double[] scores = new double[0];
+    private boolean[] touched = new boolean[0];
+    private final IntArrayList touchedDocs = new IntArrayList();
+    private final IntDoubleHashMap sparseScores = new IntDoubleHashMap();
+    private boolean dense = false;
+
+    private ScoreAccumulator() {
+    }
+
+    static ScoreAccumulator forThread() {
+        // Accumulator of the calling thread, to be reset before every query
+        return SCRATCH.get();
+    }
+
+    public void reset(int documentCount, long postingCount) {
+        // Forget the scores of the previous query and pick the layout for a query adding postingCount scores to
+        // documents with internal ids below documentCount
+
+        for (int idx = 0; idx < touchedDocs.size(); idx++) {
+            int docId = touchedDocs.get(idx);
+            scores[docId] = 0;
+            touched[docId] = false;
+        }
+        touchedDocs.clear();
+        sparseScores.clear();
+
+        dense = postingCount * DENSE_FRACTION >= documentCount;
+        if (dense && scores.length < documentCount) {
+            scores = new double[documentCount];
+            touched = new boolean[documentCount];
+        }
+    }
+
+    public void addTo(int docId, double score) {
+        if (!dense) {
+            sparseScores.addTo(docId, score);
+            return;
+        }
+        if (!touched[docId]) {
+            touched[docId] = true;
+            touchedDocs.add(docId);
+        }
+        scores[docId] += score;
+    }
+
+    public void collect(RankedQuery query, TopDocsCollector collector) {
+        // Collect every scored document the query accepts
+
+        if (dense) {
+            for (int idx = 0; idx < touchedDocs.size(); idx++) {
+                int docId = touchedDocs.get(idx);
+                if (query.accepts(docId)) {
+                    collector.collect(docId, scores[docId]);
+                }
+            }
+            return;
+        }
+        for (int slot = 0; slot < sparseScores.capacity(); slot++) {
+            if (sparseScores.isUsed(slot) && query.accepts(sparseScores.keyAt(slot))) {
+                collector.collect(sparseScores.keyAt(slot), sparseScores.valueAt(slot));
+            }
+        }
+    }
+}
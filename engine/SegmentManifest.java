@@ -0,0 +1,165 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SegmentManifest {
+    // The list of live segments of a store, in internal id order (see IndexFormat for the layout of segments.manifest)
+    // A manifest is never modified in place: a new one is written next to it and moved over it, so readers always
+    // see either the old or the new list of segments
+
+    private final String storePath;
+    private final ArrayList<SegmentInfo> segments;
+    private int nextSegmentNumber;
+
+    private SegmentManifest(String storePath, ArrayList<SegmentInfo> segments, int nextSegmentNumber) {
+        this.storePath = storePath;
+        this.segments = segments;
+        this.nextSegmentNumber = nextSegmentNumber;
+    }
+
+    public static SegmentManifest read(String storePath) throws IOException {
+        // Read the manifest of a store, a store without a manifest has no segments yet
+
+        Path manifestPath = Paths.get(storePath + IndexFormat.SEGMENTS_MANIFEST_FILENAME);
+        if (!Files.exists(manifestPath)) {
+            return new SegmentManifest(storePath, new ArrayList<>(), 0);
+        }
+
+        ByteBuffer manifest = ByteBuffer.wrap(Files.readAllBytes(manifestPath)).order(IndexFormat.BYTE_ORDER);
+        if (manifest.remaining() < 16 || manifest.getInt() != IndexFormat.MAGIC) {
+            throw new IOException("No segments manifest found at " + storePath);
+        }
+        int version = manifest.getInt();
+        if (version != IndexFormat.VERSION) {
+            throw new IOException("Unsupported index version " + version + " at " + storePath);
+        }
+        int nextSegmentNumber = manifest.getInt();
+        int segmentCount = manifest.getInt();
+        ArrayList<SegmentInfo> segments = new ArrayList<>();
+        for (int segment = 0; segment < segmentCount; segment++) {
+            segments.add(new SegmentInfo(manifest.getInt(), manifest.getInt(), manifest.getInt()));
+        }
+        return new SegmentManifest(storePath, segments, nextSegmentNumber);
+    }
+
+    public void write() throws IOException {
+        // Atomically replace the manifest of the store with this one
+
+        stage();
+        commit();
+    }
+
+    public void stage() throws IOException {
+        // Write this manifest next to the live one, commit() then makes it the live one
+
+        ByteBuffer manifest = ByteBuffer.allocate(16 + segments.size() * 12).order(IndexFormat.BYTE_ORDER);
+        manifest.putInt(IndexFormat.MAGIC);
+        manifest.putInt(IndexFormat.VERSION);
+        manifest.putInt(nextSegmentNumber);
+        manifest.putInt(segments.size());
+        for (SegmentInfo segment : segments) {
+            manifest.putInt(segment.number);
+            manifest.putInt(segment.docBase);
+            manifest.putInt(segment.documentCount);
+        }
+
+        Files.write(pendingPath(storePath), manifest.array());
+    }
+
+    public void commit() throws IOException {
+        // Atomically replace the live manifest with the one staged last
+
+        Path manifestPath = Paths.get(storePath + IndexFormat.SEGMENTS_MANIFEST_FILENAME);
+        Files.move(pendingPath(storePath), manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void recover(String storePath, boolean committing) throws IOException {
+        // Finish or undo a manifest left staged by an interrupted update: it is made live if it was being committed
+        // along with the manifests of the other variants, and dropped otherwise
+
+        Path pendingPath = pendingPath(storePath);
+        if (Files.exists(pendingPath) && committing) {
+            Files.move(pendingPath, Paths.get(storePath + IndexFormat.SEGMENTS_MANIFEST_FILENAME),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.deleteIfExists(pendingPath);
+        }
+
+        // Segments written by an update that was never published are deleted, their numbers are handed out again
+        SegmentManifest manifest = read(storePath);
+        File[] segmentDirectories = new File(storePath + IndexFormat.SEGMENTS_DIRECTORY).listFiles();
+        if (segmentDirectories != null) {
+            String segmentPrefix = IndexFormat.SEGMENT_PREFIX.substring(1);
+            for (File segmentDirectory : segmentDirectories) {
+                String name = segmentDirectory.getName();
+                if (name.startsWith(segmentPrefix) && Integer.parseInt(name.substring(segmentPrefix.length())) >= manifest.nextSegmentNumber) {
+                    SegmentMerger.deleteSegment(segmentDirectory.getPath());
+                }
+            }
+        }
+    }
+
+    private static Path pendingPath(String storePath) {
+        return Paths.get(storePath + IndexFormat.SEGMENTS_MANIFEST_FILENAME + IndexFormat.PENDING_SUFFIX);
+    }
+
+    public String getStorePath() {
+        return storePath;
+    }
+
+    public int newSegmentNumber() {
+        return nextSegmentNumber++;
+    }
+
+    public void addSegment(SegmentInfo segment) {
+        segments.add(segment);
+    }
+
+    public void replaceSegments(List<SegmentInfo> mergedSegments, SegmentInfo segment) {
+        // Swap adjacent segments for the segment they were merged into
+
+        int position = segments.indexOf(mergedSegments.get(0));
+        segments.removeAll(mergedSegments);
+        segments.add(position, segment);
+    }
+
+    public List<SegmentInfo> getSegments() {
+        return segments;
+    }
+
+    public int getDocumentCount() {
+        // Total number of documents, which is also the first internal id of the next segment
+
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        SegmentInfo last = segments.get(segments.size() - 1);
+        return last.docBase + last.documentCount;
+    }
+
+    public String segmentPath(SegmentInfo segment) {
+        return segmentPath(segment.number);
+    }
+
+    public String segmentPath(int segmentNumber) {
+        return storePath + IndexFormat.SEGMENTS_DIRECTORY + IndexFormat.SEGMENT_PREFIX + segmentNumber;
+    }
+
+    static class SegmentInfo {
+        final int number;
+        final int docBase;
+        final int documentCount;
+
+        SegmentInfo(int number, int docBase, int documentCount) {
+            this.number = number;
+            this.docBase = docBase;
+            this.documentCount = documentCount;
+        }
+    }
+}
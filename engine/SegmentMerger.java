@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class SegmentMerger {
+    // Merges adjacent segments into a new segment, following the TieredMergePolicy
+    // The merged segment is written next to the live ones and published by replacing the manifest, so queries running
+    // against the old segments are not affected. The old segment files are deleted afterwards
+    // IndexEngine runs these merges in the background of the next append, which only reads the manifest once they end
+
+    public static void mergeSegments(String storePath) throws IOException {
+        // Merge segments until no tier of the store is full
+
+        SegmentManifest manifest = SegmentManifest.read(storePath);
+        int[] range = TieredMergePolicy.findMerge(manifest.getSegments());
+        while (range != null) {
+            mergeAndPublish(manifest, range[0], range[1]);
+            range = TieredMergePolicy.findMerge(manifest.getSegments());
+        }
+    }
+
+    public static void mergeSegments(String storePath, int fromSegment, int toSegment) throws IOException {
+        // Merge the segments [fromSegment, toSegment) of the store into one, whatever their tiers
+
+        SegmentManifest manifest = SegmentManifest.read(storePath);
+        if (toSegment - fromSegment > 1) {
+            mergeAndPublish(manifest, fromSegment, toSegment);
+        }
+    }
+
+    private static void mergeAndPublish(SegmentManifest manifest, int fromSegment, int toSegment) throws IOException {
+        // Replace the segments [fromSegment, toSegment) with their merged segment in the manifest, then delete them
+
+        List<SegmentManifest.SegmentInfo> mergingSegments = new ArrayList<>(manifest.getSegments().subList(fromSegment, toSegment));
+        SegmentManifest.SegmentInfo mergedSegment = merge(manifest, mergingSegments);
+
+        manifest.replaceSegments(mergingSegments, mergedSegment);
+        manifest.write();
+        for (SegmentManifest.SegmentInfo segment : mergingSegments) {
+            deleteSegment(manifest.segmentPath(segment));
+        }
+    }
+
+    private static SegmentManifest.SegmentInfo merge(SegmentManifest manifest, List<SegmentManifest.SegmentInfo> segments) throws IOException {
+        // Write the terms of the segments in lexicon order, chaining the postings of each term in internal id order
+
+        int segmentNumber = manifest.newSegmentNumber();
+        int docBase = segments.get(0).docBase;
+        int documentCount = 0;
+        Logger.getLogger("SegmentMerger").log(Level.INFO, "Merging " + segments.size() + " segments into segment " + segmentNumber + "...");
+
+        IndexReader[] readers = new IndexReader[segments.size()];
+        PriorityQueue<SegmentTerms> heap = new PriorityQueue<>((terms1, terms2) -> {
+            int comparison = Lexicon.compareTerms(terms1.term, terms2.term);
+            return comparison != 0 ? comparison : Integer.compare(terms1.segment, terms2.segment);
+        });
+        for (int segment = 0; segment < readers.length; segment++) {
+            readers[segment] = IndexReader.open(manifest.segmentPath(segments.get(segment)));
+            documentCount += readers[segment].getDocumentCount();
+            SegmentTerms terms = new SegmentTerms(segment, readers[segment].terms());
+            if (terms.next()) {
+                heap.add(terms);
+            }
+        }
+
+        // The merged segment keeps positions only if every one of its segments has them
+        boolean positional = true;
+        for (IndexReader reader : readers) {
+            positional &= reader.isPositional();
+        }
+        IndexWriter indexWriter = new IndexWriter(manifest.segmentPath(segmentNumber), readers[0].getCodec(), readers[0].isStemmed(), positional, documentCount);
+        for (IndexReader reader : readers) {
+            for (int docId = 0; docId < reader.getDocumentCount(); docId++) {
+                indexWriter.addDocumentLength(reader.documentLength(docId));
+            }
+        }
+
+        PositionsBuffer mergedPositions = new PositionsBuffer();
+        ArrayList<SegmentTerms> sameTermSegments = new ArrayList<>();
+        while (!heap.isEmpty()) {
+            String term = heap.peek().term;
+            while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                sameTermSegments.add(heap.remove());
+            }
+
+            // The heap breaks ties by segment, so the postings are chained in internal id order
+            PostingsIterator[] postings = new PostingsIterator[sameTermSegments.size()];
+            int[] docBases = new int[sameTermSegments.size()];
+            int[] docLimits = new int[sameTermSegments.size()];
+            for (int idx = 0; idx < postings.length; idx++) {
+                SegmentTerms terms = sameTermSegments.get(idx);
+                SegmentManifest.SegmentInfo segment = segments.get(terms.segment);
+                postings[idx] = readers[terms.segment].postings(terms.terms.termId());
+                docBases[idx] = segment.docBase - docBase;
+                docLimits[idx] = segment.docBase + segment.documentCount - docBase;
+            }
+            indexWriter.addTerm(term, new SegmentedPostingsIterator(postings, docBases, docLimits));
+
+            if (positional) {
+                PositionsIterator[] positions = new PositionsIterator[postings.length];
+                for (int idx = 0; idx < positions.length; idx++) {
+                    SegmentTerms terms = sameTermSegments.get(idx);
+                    positions[idx] = readers[terms.segment].positions(terms.terms.termId());
+                }
+                PositionsIterator chained = new SegmentedPositionsIterator(positions, docBases, docLimits);
+                mergedPositions.reset();
+                for (int docId = chained.nextDoc(); docId != PositionsIterator.NO_MORE_DOCS; docId = chained.nextDoc()) {
+                    mergedPositions.copyPosting(chained, docId);
+                }
+                indexWriter.addPositions(mergedPositions.getData(), mergedPositions.length());
+            }
+
+            for (SegmentTerms terms : sameTermSegments) {
+                if (terms.next()) {
+                    heap.add(terms);
+                }
+            }
+            sameTermSegments.clear();
+        }
+
+        indexWriter.close();
+
+        return new SegmentManifest.SegmentInfo(segmentNumber, docBase, documentCount);
+    }
+
+    static void deleteSegment(String segmentPath) {
+        // Remove the files of a segment that is no longer in the manifest
+
+        File segmentDirectory = new File(segmentPath);
+        File[] files = segmentDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        segmentDirectory.delete();
+    }
+
+    private static class SegmentTerms {
+        // Position of the merge in the lexicon of one segment
+
+        final int segment;
+        final Lexicon.TermIterator terms;
+        String term;
+
+        SegmentTerms(int segment, Lexicon.TermIterator terms) {
+            this.segment = segment;
+            this.terms = terms;
+        }
+
+        boolean next() {
+            if (!terms.next()) {
+                return false;
+            }
+            term = terms.term();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SegmentedIndex {
+    // Searches every live segment of a store as one index of internal ids
+    // Collection statistics (document count, average document length, document frequencies) are summed over the
+    // segments, so scores do not depend on how the collection is split into segments
+
+    private final IndexReader[] segments;
+    private final int[] docBases;
+    private final int[] docLimits;
+    private final int documentCount;
+    private final long totalDocumentLength;
+    private final ArrayList<LengthNorms> lengthNorms = new ArrayList<>();
+
+    private SegmentedIndex(String variantPath) throws IOException {
+        SegmentManifest manifest = SegmentManifest.read(variantPath);
+        List<SegmentManifest.SegmentInfo> segmentInfos = manifest.getSegments();
+        if (segmentInfos.isEmpty()) {
+            throw new IOException("No index found at " + variantPath);
+        }
+
+        segments = new IndexReader[segmentInfos.size()];
+        docBases = new int[segmentInfos.size()];
+        docLimits = new int[segmentInfos.size()];
+        long totalDocumentLength = 0;
+        for (int segment = 0; segment < segments.length; segment++) {
+            SegmentManifest.SegmentInfo segmentInfo = segmentInfos.get(segment);
+            segments[segment] = IndexReader.open(manifest.segmentPath(segmentInfo));
+            docBases[segment] = segmentInfo.docBase;
+            docLimits[segment] = segmentInfo.docBase + segmentInfo.documentCount;
+            totalDocumentLength += segments[segment].getTotalDocumentLength();
+        }
+        this.documentCount = manifest.getDocumentCount();
+        this.totalDocumentLength = totalDocumentLength;
+    }
+
+    public static SegmentedIndex open(String storePath, boolean stemmed) throws IOException {
+        // Open the stemmed or unstemmed variant of a store, or its only variant, isStemmed() tells which one was opened
+
+        // Variants holding different documents were left by an interrupted update and are not opened
+        VariantManifest variants = VariantManifest.read(storePath);
+        variants.getDocumentCount();
+        return new SegmentedIndex(variants.selectVariant(stemmed));
+    }
+
+    public PostingsIterator postings(String term) {
+        // Postings of the term over every segment, as internal ids, null if no segment contains the term
+
+        int segmentsWithTerm = 0;
+        PostingsIterator[] postings = new PostingsIterator[segments.length];
+        int[] termDocBases = new int[segments.length];
+        int[] termDocLimits = new int[segments.length];
+        for (int segment = 0; segment < segments.length; segment++) {
+            int termId = segments[segment].getTermId(term);
+            if (termId >= 0) {
+                postings[segmentsWithTerm] = segments[segment].postings(termId);
+                termDocBases[segmentsWithTerm] = docBases[segment];
+                termDocLimits[segmentsWithTerm] = docLimits[segment];
+                segmentsWithTerm++;
+            }
+        }
+
+        if (segmentsWithTerm == 0) {
+            return null;
+        }
+        if (segmentsWithTerm == 1 && termDocBases[0] == 0) {
+            return postings[0];
+        }
+        return new SegmentedPostingsIterator(Arrays.copyOf(postings, segmentsWithTerm),
+                Arrays.copyOf(termDocBases, segmentsWithTerm), Arrays.copyOf(termDocLimits, segmentsWithTerm));
+    }
+
+    public PositionsIterator positions(String term) {
+        // Positions of the term over every segment, as internal ids, null if no segment contains the term or the index
+        // is not positional
+
+        if (!isPositional()) {
+            return null;
+        }
+        int segmentsWithTerm = 0;
+        PositionsIterator[] positions = new PositionsIterator[segments.length];
+        int[] termDocBases = new int[segments.length];
+        int[] termDocLimits = new int[segments.length];
+        for (int segment = 0; segment < segments.length; segment++) {
+            int termId = segments[segment].getTermId(term);
+            if (termId >= 0) {
+                positions[segmentsWithTerm] = segments[segment].positions(termId);
+                termDocBases[segmentsWithTerm] = docBases[segment];
+                termDocLimits[segmentsWithTerm] = docLimits[segment];
+                segmentsWithTerm++;
+            }
+        }
+
+        if (segmentsWithTerm == 0) {
+            return null;
+        }
+        if (segmentsWithTerm == 1 && termDocBases[0] == 0) {
+            return positions[0];
+        }
+        return new SegmentedPositionsIterator(Arrays.copyOf(positions, segmentsWithTerm),
+                Arrays.copyOf(termDocBases, segmentsWithTerm), Arrays.copyOf(termDocLimits, segmentsWithTerm));
+    }
+
+    public int documentFrequency(String term) {
+        int documentFrequency = 0;
+        for (IndexReader segment : segments) {
+            int termId = segment.getTermId(term);
+            if (termId >= 0) {
+                documentFrequency += segment.documentFrequency(termId);
+            }
+        }
+        return documentFrequency;
+    }
+
+    public long collectionFrequency(String term) {
+        long collectionFrequency = 0;
+        for (IndexReader segment : segments) {
+            int termId = segment.getTermId(term);
+            if (termId >= 0) {
+                collectionFrequency += segment.collectionFrequency(termId);
+            }
+        }
+        return collectionFrequency;
+    }
+
+    public double idf(String term) {
+        // Idf of the term over the whole collection
+        // A single segment stores it with the term, otherwise it follows from the document frequencies of the segments
+
+        if (segments.length == 1) {
+            int termId = segments[0].getTermId(term);
+            if (termId >= 0) {
+                return segments[0].idf(termId);
+            }
+        }
+        return IndexFormat.idf(documentCount, documentFrequency(term));
+    }
+
+    public int documentLength(int internalId) {
+        int segment = segmentOf(internalId);
+        return segments[segment].documentLength(internalId - docBases[segment]);
+    }
+
+    public synchronized LengthNorms lengthNorms(double k1, double b, boolean quantized) {
+        // BM25 length normalization of every document for (k1, b), built on first use and kept for later queries
+
+        for (LengthNorms norms : lengthNorms) {
+            if (norms.matches(k1, b, quantized)) {
+                return norms;
+            }
+        }
+
+        int[] documentLengths = new int[docLimits[segments.length - 1]];
+        for (int segment = 0; segment < segments.length; segment++) {
+            for (int internalId = docBases[segment]; internalId < docLimits[segment]; internalId++) {
+                documentLengths[internalId] = segments[segment].documentLength(internalId - docBases[segment]);
+            }
+        }
+        LengthNorms norms = quantized
+                ? LengthNorms.quantized(documentLengths, getAverageDocumentLength(), k1, b)
+                : LengthNorms.exact(documentLengths, getAverageDocumentLength(), k1, b);
+        lengthNorms.add(norms);
+        return norms;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    public long getTotalDocumentLength() {
+        return totalDocumentLength;
+    }
+
+    public double getAverageDocumentLength() {
+        return documentCount == 0 ? 0.0 : (double) totalDocumentLength / documentCount;
+    }
+
+    public boolean isStemmed() {
+        return segments[0].isStemmed();
+    }
+
+    public boolean isPositional() {
+        // Positions can only be searched if every segment has them
+        for (IndexReader segment : segments) {
+            if (!segment.isPositional()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    public IndexReader getSegment(int segment) {
+        return segments[segment];
+    }
+
+    public int getDocBase(int segment) {
+        return docBases[segment];
+    }
+
+    private int segmentOf(int internalId) {
+        // Binary search the last segment starting at or before the internal id
+
+        int low = 0;
+        int high = segments.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (docBases[mid] <= internalId) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
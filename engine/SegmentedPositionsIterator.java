@@ -0,0 +1,12 @@
+public class SegmentedPositionsIterator extends SegmentedPostingsIterator implements PositionsIterator {
+    // Chains the positions lists of one term from several segments, positions are read from the current segment
+
+    SegmentedPositionsIterator(PositionsIterator[] positions, int[] docBases, int[] docLimits) {
+        super(positions, docBases, docLimits);
+    }
+
+    @Override
+    public int nextPosition() {
+        return ((PositionsIterator) currentPostings()).nextPosition();
+    }
+}
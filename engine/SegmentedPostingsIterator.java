@@ -0,0 +1,79 @@
+public class SegmentedPostingsIterator implements PostingsIterator {
+    // Chains the postings lists of one term from several segments into a single list of internal ids
+    // Segments cover consecutive ranges of internal ids, so adding the docBase of each segment keeps the order
+
+    private final PostingsIterator[] postings;
+    private final int[] docBases;
+    private final int[] docLimits;
+    private final int documentFrequency;
+    private int segment = 0;
+    private int docId = -1;
+
+    SegmentedPostingsIterator(PostingsIterator[] postings, int[] docBases, int[] docLimits) {
+        // docLimits holds the internal id following the last document of every segment
+        this.postings = postings;
+        this.docBases = docBases;
+        this.docLimits = docLimits;
+        int documentFrequency = 0;
+        for (PostingsIterator segmentPostings : postings) {
+            documentFrequency += segmentPostings.documentFrequency();
+        }
+        this.documentFrequency = documentFrequency;
+    }
+
+    @Override
+    public int nextDoc() {
+        while (segment < postings.length) {
+            int segmentDocId = postings[segment].nextDoc();
+            if (segmentDocId != NO_MORE_DOCS) {
+                docId = docBases[segment] + segmentDocId;
+                return docId;
+            }
+            segment++;
+        }
+        docId = NO_MORE_DOCS;
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (docId >= target) {
+            return docId;
+        }
+
+        // Skip the segments that end before the target without decoding them
+        while (segment < postings.length && target >= docLimits[segment]) {
+            segment++;
+        }
+        while (segment < postings.length) {
+            int segmentDocId = postings[segment].advance(Math.max(0, target - docBases[segment]));
+            if (segmentDocId != NO_MORE_DOCS) {
+                docId = docBases[segment] + segmentDocId;
+                return docId;
+            }
+            segment++;
+        }
+        docId = NO_MORE_DOCS;
+        return docId;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int frequency() {
+        return postings[segment].frequency();
+    }
+
+    @Override
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    PostingsIterator currentPostings() {
+        // Iterator of the segment holding the current document
+        return postings[segment];
+    }
+}
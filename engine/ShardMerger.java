@@ -0,0 +1,82 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ShardMerger {
+    // Combines the stores built for the shards of a collection into the store, in shard order
+    // A shard is indexed with internal ids from 0 since the number of documents in the shards before it is not known
+    // yet. Here its documents get their final internal ids, following those of the shards before it whatever order the
+    // shards finished in, so the store does not depend on scheduling. Document blocks and segments are moved, not
+    // copied: only document records, metadata and mappings are rewritten with the shifted ids. The segments of the
+    // shards are then merged into a single new segment per variant, like a store indexed in one pass
+    // Documents and metadata are appended before the segments are published: if combining fails in between, the next
+    // IndexEngine drops them again (see IndexEngine.readDocumentCount)
+
+    public static int mergeShards(List<String> shardPaths, String storePath, VariantManifest variants, int docBase, boolean append) throws IOException {
+        // Append the documents of every shard to the store, then its segments, and return the number of documents
+
+        int[] shardDocBases = new int[shardPaths.size()];
+        int documentCount = 0;
+        SnippetEngine snippetEngine = new SnippetEngine(storePath, append);
+        MetadataEngine metadataEngine = new MetadataEngine(storePath, append);
+        for (int shard = 0; shard < shardPaths.size(); shard++) {
+            shardDocBases[shard] = docBase + documentCount;
+            snippetEngine.appendDocuments(shardPaths.get(shard));
+            int shardDocuments = metadataEngine.appendMetadata(shardPaths.get(shard), shardDocBases[shard]);
+            documentCount += shardDocuments;
+        }
+        snippetEngine.closeWriters();
+        metadataEngine.closeWriters();
+
+        // The segments of the shards are published in every variant at once, so the variants always hold the same
+        // documents, and then merged variant by variant
+        ArrayList<SegmentManifest> manifests = new ArrayList<>();
+        ArrayList<Integer> firstShardSegments = new ArrayList<>();
+        for (boolean stemmed : new boolean[]{false, true}) {
+            if (variants.hasVariant(stemmed)) {
+                SegmentManifest manifest = SegmentManifest.read(variants.variantPath(stemmed));
+                firstShardSegments.add(manifest.getSegments().size());
+                moveSegments(shardPaths, shardDocBases, manifest, stemmed);
+                manifests.add(manifest);
+            }
+        }
+        variants.publishSegments(manifests);
+
+        for (int variant = 0; variant < manifests.size(); variant++) {
+            Logger.getLogger("ShardMerger").log(Level.INFO, "Merging the segments of " + shardPaths.size() + " shards of " + manifests.get(variant).getStorePath() + "...");
+            SegmentMerger.mergeSegments(manifests.get(variant).getStorePath(), firstShardSegments.get(variant), manifests.get(variant).getSegments().size());
+        }
+        return documentCount;
+    }
+
+    private static void moveSegments(List<String> shardPaths, int[] shardDocBases, SegmentManifest manifest, boolean stemmed) throws IOException {
+        // Move the segments of the shards into the variant of the manifest with their final internal ids
+
+        for (int shard = 0; shard < shardPaths.size(); shard++) {
+            SegmentManifest shardManifest = SegmentManifest.read(VariantManifest.read(shardPaths.get(shard)).variantPath(stemmed));
+            for (SegmentManifest.SegmentInfo segment : shardManifest.getSegments()) {
+                int segmentNumber = manifest.newSegmentNumber();
+                new File(manifest.segmentPath(segmentNumber)).getParentFile().mkdirs();
+                Files.move(Paths.get(shardManifest.segmentPath(segment)), Paths.get(manifest.segmentPath(segmentNumber)));
+                manifest.addSegment(new SegmentManifest.SegmentInfo(segmentNumber, shardDocBases[shard] + segment.docBase, segment.documentCount));
+            }
+        }
+    }
+
+    static void deleteDirectory(File directory) {
+        // Remove a directory and everything in it
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteDirectory(file);
+            }
+        }
+        directory.delete();
+    }
+}
@@ -1,39 +1,192 @@
 import java.io.*;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 public class SnippetEngine {
+    // Saves raw documents into the packed document store read by the DocumentStore (see DocumentStore for the layout)
+    // Documents are buffered into a block that is compressed and appended once it is full, so indexing creates a
+    // handful of large files instead of one file per document
     private String storePath;
+    private boolean append;
+    private int fileNumber;
+    private ChannelWriter blocksWriter;
+    private ChannelWriter recordsWriter;
+    private int nextInternalId;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+    private int blockDocuments = 0;
+    private final Deflater deflater = new Deflater();
+    private byte[] compressed = new byte[DocumentStore.BLOCK_BYTES];
 
-    SnippetEngine(String storePath) {
+    SnippetEngine(String storePath) throws IOException {
+        this(storePath, false);
+    }
+
+    SnippetEngine(String storePath, boolean append) throws IOException {
+        // In append mode, new documents go to a new block file and their records follow those of the stored documents
         this.storePath = storePath;
+        this.append = append;
+        initializeWriter();
+    }
+
+    public void saveDocument(ParsedDocument document, int internalId) throws IOException {
+        // Add the raw bytes of the document to the current block, documents must be saved in internal id order
+
+        if (internalId != nextInternalId) {
+            throw new IOException("Document " + internalId + " saved out of order, expected " + nextInternalId);
+        }
+        nextInternalId++;
+
+        byte[] bytes = document.bytes;
+        block.write(bytes.length & 0xFF);
+        block.write((bytes.length >>> 8) & 0xFF);
+        block.write((bytes.length >>> 16) & 0xFF);
+        block.write((bytes.length >>> 24) & 0xFF);
+        block.write(bytes);
+        blockDocuments++;
+
+        if (blockDocuments == DocumentStore.BLOCK_DOCUMENTS || block.size() >= DocumentStore.BLOCK_BYTES) {
+            flushBlock();
+        }
+    }
+
+    public void appendDocuments(String shardStorePath) throws IOException {
+        // Move the document blocks of a shard's store after the blocks of this store, and append the records of its
+        // documents with their file numbers shifted, so they follow the documents saved so far
+        // The shard's records are in its internal id order, which is also the order of its documents in the store
+
+        flushBlock();
+        blocksWriter.close();
+        int firstFile = blocksWriter.position() == 0 ? fileNumber : fileNumber + 1;
+        int shardFiles = DocumentStore.countBlockFiles(shardStorePath);
+        for (int file = 0; file < shardFiles; file++) {
+            Files.move(Paths.get(DocumentStore.blockFilePath(shardStorePath, file)),
+                    Paths.get(DocumentStore.blockFilePath(storePath, firstFile + file)), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(
+                Paths.get(shardStorePath + DocumentStore.DIRECTORY + DocumentStore.INDEX_FILENAME))).order(IndexFormat.BYTE_ORDER);
+        while (records.hasRemaining()) {
+            recordsWriter.writeInt(firstFile + records.getInt());
+            recordsWriter.writeLong(records.getLong());
+            recordsWriter.writeInt(records.getInt());
+            nextInternalId++;
+        }
+
+        fileNumber = firstFile + shardFiles;
+        blocksWriter = new ChannelWriter(DocumentStore.blockFilePath(storePath, fileNumber));
+    }
+
+    public void closeWriters() throws IOException {
+        // Write the documents still buffered, the store is only complete once this returns
+
+        flushBlock();
+        blocksWriter.close();
+        if (blocksWriter.position() == 0 && fileNumber > 0) {
+            // Do not leave an empty block file after the others, as when no document follows the blocks of shards
+            Files.delete(Paths.get(DocumentStore.blockFilePath(storePath, fileNumber)));
+        }
+        recordsWriter.close();
+        deflater.end();
     }
 
-    public void saveDocument(ArrayList<String> document, String docno, String[] date) throws IOException {
-        // Saves document to file system in the following format: YY/MM/DD/DOCNO.txt
+    static void rollBack(String storePath, int documentCount) throws IOException {
+        // Drop the documents saved after the first documentCount ones by an update that did not publish its segments,
+        // so the next document saved is documentCount again
+        // Blocks are written before their records, so the blocks to keep end with the block of the last record kept
 
-        String month = date[0];
-        String day = date[1];
-        String year = date[2];
+        File recordsFile = new File(storePath + DocumentStore.DIRECTORY + DocumentStore.INDEX_FILENAME);
+        long recordsBytes = (long) documentCount * DocumentStore.RECORD_BYTES;
+        if (!recordsFile.exists() && documentCount == 0) {
+            return;
+        }
+        if (recordsFile.length() < recordsBytes) {
+            throw new IOException("The document store at " + storePath + " holds fewer than the " + documentCount + " indexed documents");
+        }
+        if (recordsFile.length() > recordsBytes) {
+            Logger.getLogger("SnippetEngine").log(Level.WARNING, "Dropping " + (recordsFile.length() - recordsBytes) / DocumentStore.RECORD_BYTES +
+                    " documents saved at " + storePath + " by an update that did not complete");
+        }
+
+        int lastFile = -1;
+        long blocksEnd = 0;
+        try (FileChannel records = FileChannel.open(recordsFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (documentCount > 0) {
+                ByteBuffer record = ByteBuffer.allocate(DocumentStore.RECORD_BYTES).order(IndexFormat.BYTE_ORDER);
+                DocumentStore.readFully(records, record, recordsBytes - DocumentStore.RECORD_BYTES);
+                lastFile = record.getInt(0);
+                long blockOffset = record.getLong(4);
+                try (FileChannel blocks = FileChannel.open(Paths.get(DocumentStore.blockFilePath(storePath, lastFile)), StandardOpenOption.READ)) {
+                    ByteBuffer header = ByteBuffer.allocate(DocumentStore.BLOCK_HEADER_BYTES).order(IndexFormat.BYTE_ORDER);
+                    DocumentStore.readFully(blocks, header, blockOffset);
+                    blocksEnd = blockOffset + DocumentStore.BLOCK_HEADER_BYTES + header.getInt(4);
+                }
+            }
+            records.truncate(recordsBytes);
+        }
+
+        if (lastFile >= 0) {
+            try (FileChannel blocks = FileChannel.open(Paths.get(DocumentStore.blockFilePath(storePath, lastFile)), StandardOpenOption.WRITE)) {
+                blocks.truncate(blocksEnd);
+            }
+        }
+        for (int file = DocumentStore.countBlockFiles(storePath) - 1; file > lastFile; file--) {
+            Files.delete(Paths.get(DocumentStore.blockFilePath(storePath, file)));
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        // Compress the buffered documents and write the block, then the record of each of its documents
 
-        File documentPath = new File(storePath + "/" + year + "/" + month + "/" + day);
-        if(!documentPath.exists()) {
-            documentPath.mkdirs();
+        if (blockDocuments == 0) {
+            return;
+        }
+        if (blocksWriter.position() >= DocumentStore.MAX_FILE_BYTES) {
+            blocksWriter.close();
+            fileNumber++;
+            blocksWriter = new ChannelWriter(DocumentStore.blockFilePath(storePath, fileNumber));
         }
-        File documentFile = new File(storePath + "/" + year + "/" + month + "/" + day + "/" + docno + ".txt");
-        FileOutputStream documentFOS = new FileOutputStream(documentFile);
-        BufferedWriter documentBW = new BufferedWriter(new OutputStreamWriter(documentFOS));
 
-        document.forEach((docLine) -> {
-            try {
-                documentBW.write(docLine);
-                documentBW.newLine();
-            } catch(IOException e) {
-                Logger.getLogger("SnippetEngine").log(Level.SEVERE, e.toString());
+        deflater.reset();
+        deflater.setInput(block.toByteArray());
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
             }
-        });
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+
+        long blockOffset = blocksWriter.position();
+        blocksWriter.writeInt(block.size());
+        blocksWriter.writeInt(compressedLength);
+        blocksWriter.write(compressed, 0, compressedLength);
+
+        for (int position = 0; position < blockDocuments; position++) {
+            recordsWriter.writeInt(fileNumber);
+            recordsWriter.writeLong(blockOffset);
+            recordsWriter.writeInt(position);
+        }
+
+        block.reset();
+        blockDocuments = 0;
+    }
+
+    private void initializeWriter() throws IOException {
+        new File(storePath + DocumentStore.DIRECTORY).mkdirs();
+        File recordsFile = new File(storePath + DocumentStore.DIRECTORY + DocumentStore.INDEX_FILENAME);
+        nextInternalId = append && recordsFile.exists() ? (int) (recordsFile.length() / DocumentStore.RECORD_BYTES) : 0;
+        fileNumber = append ? DocumentStore.countBlockFiles(storePath) : 0;
 
-        documentBW.close();
+        recordsWriter = new ChannelWriter(recordsFile.getPath(), append);
+        blocksWriter = new ChannelWriter(DocumentStore.blockFilePath(storePath, fileNumber));
     }
 }
@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+public class StemCache {
+    // Bounded cache of the Porter stems of surface tokens, shared by every indexing worker
+    // The cache is direct-mapped: a surface form can only be held by the slot picked by its hash, and a miss replaces
+    // whatever that slot held. So the cache never grows past its slots, and the frequent forms, which make up most of
+    // the tokens of a collection, keep their slots. Entries are immutable and slots are read and written without
+    // locks: a worker sees either a complete entry or an older one, and a write lost to another worker only costs a
+    // later miss
+    private static final int DEFAULT_SLOTS = 1 << 16;
+
+    private final Entry[] slots;
+    private final int mask;
+
+    StemCache() {
+        this(DEFAULT_SLOTS);
+    }
+
+    StemCache(int slotCount) {
+        // Round up to a power of two so a slot is picked with a mask
+        slots = new Entry[Integer.highestOneBit(Math.max(2, slotCount) - 1) << 1];
+        mask = slots.length - 1;
+    }
+
+    public String stem(char[] chars, int start, int length, PorterStemmer stemmer) {
+        // Stem of the token spanning chars[start, start + length), stemmed with the caller's own stemmer on a miss
+
+        int hash = 0;
+        for (int idx = start; idx < start + length; idx++) {
+            hash = 31 * hash + chars[idx];
+        }
+        int slot = IntIntHashMap.hash(hash) & mask;
+        Entry entry = slots[slot];
+        if (entry != null && entry.hash == hash && entry.matches(chars, start, length)) {
+            return entry.stem;
+        }
+
+        String surfaceForm = new String(chars, start, length);
+        int stemLength = stemmer.stem(chars, start, length);
+        String stem = Arrays.equals(stemmer.getBuffer(), 0, stemLength, chars, start, start + length)
+                ? surfaceForm : new String(stemmer.getBuffer(), 0, stemLength);
+        slots[slot] = new Entry(surfaceForm, hash, stem);
+        return stem;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    private static final class Entry {
+        private final String surfaceForm;
+        private final int hash;
+        private final String stem;
+
+        private Entry(String surfaceForm, int hash, String stem) {
+            this.surfaceForm = surfaceForm;
+            this.hash = hash;
+            this.stem = stem;
+        }
+
+        private boolean matches(char[] chars, int start, int length) {
+            if (surfaceForm.length() != length) {
+                return false;
+            }
+            for (int idx = 0; idx < length; idx++) {
+                if (surfaceForm.charAt(idx) != chars[start + idx]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
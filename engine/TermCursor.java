@@ -0,0 +1,80 @@
+public class TermCursor {
+    // The postings of one query term in one segment, for document-at-a-time evaluation, with upper bounds on the score
+    // the term adds to a document: over the whole list, from the highest tf and shortest document of the term, and over
+    // the block holding a given document for the block codec, from the block header
+
+    final PostingsIterator postings;
+    final int term;
+    final double upperBound;
+    private final BlockPostingsIterator blocks;
+    private int blockLastDocId = -1;
+    private double blockUpperBound = 0;
+
+    TermCursor(RankedQuery query, IndexReader reader, int termId, int term) {
+        this.postings = reader.postings(termId);
+        this.term = term;
+        this.upperBound = query.upperBound(term, reader.maxFrequency(termId), reader.minDocumentLength(termId));
+        this.blocks = postings instanceof BlockPostingsIterator ? (BlockPostingsIterator) postings : null;
+        postings.nextDoc();
+    }
+
+    static int openCursors(RankedQuery query, int segment, TermCursor[] cursors) {
+        // Open a cursor for every query term found in the segment and return their number
+
+        IndexReader reader = query.index.getSegment(segment);
+        int cursorCount = 0;
+        for (int term = 0; term < query.terms.length; term++) {
+            int termId = reader.getTermId(query.terms[term]);
+            if (termId >= 0) {
+                cursors[cursorCount++] = new TermCursor(query, reader, termId, term);
+            }
+        }
+        return cursorCount;
+    }
+
+    public int docId() {
+        return postings.docId();
+    }
+
+    public double blockUpperBound(RankedQuery query, int target) {
+        // Upper bound over the block holding the first posting at or after target, moving to that block without decoding
+        // it. The bound of a block is only computed once, targets never decrease
+        // Lists without blocks are bounded as a whole
+
+        if (blocks == null) {
+            return upperBound;
+        }
+        if (blockLastDocId < target) {
+            blockLastDocId = blocks.advanceShallow(target);
+            blockUpperBound = blockLastDocId == PostingsIterator.NO_MORE_DOCS
+                    ? 0 : query.upperBound(term, blocks.blockMaxFrequency(), blocks.blockMinDocumentLength());
+        }
+        return blockUpperBound;
+    }
+
+    public int blockLastDocId() {
+        // Last docId covered by the last blockUpperBound()
+        return blocks == null ? PostingsIterator.NO_MORE_DOCS : blockLastDocId;
+    }
+
+    public int decodedPostings() {
+        if (blocks != null) {
+            return blocks.decodedPostings();
+        }
+        return postings instanceof VBytePostingsIterator ? ((VBytePostingsIterator) postings).decodedPostings() : 0;
+    }
+
+    static void sortByDocId(TermCursor[] cursors, int cursorCount) {
+        // Insertion sort, queries have a handful of terms and the cursors are mostly sorted already
+
+        for (int idx = 1; idx < cursorCount; idx++) {
+            TermCursor cursor = cursors[idx];
+            int position = idx - 1;
+            while (position >= 0 && cursors[position].docId() > cursor.docId()) {
+                cursors[position + 1] = cursors[position];
+                position--;
+            }
+            cursors[position + 1] = cursor;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+public class TermTable {
+    // Open-addressing table from terms to dense ids, assigned in insertion order, with linear probing
+    // Terms can be looked up and added as spans of a char array, so a token only becomes a String the first time it
+    // is added. Slots hold ids, the terms themselves and their hashes are kept by id
+    // A span hashes like String.hashCode, so looking up a String reuses the hash cached in it
+    private static final int EMPTY_SLOT = -1;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] slots;
+    private String[] terms;
+    private int[] hashes;
+    private int size = 0;
+    private int mask;
+
+    TermTable() {
+        this(16);
+    }
+
+    TermTable(int expectedSize) {
+        int tableSize = IntIntHashMap.tableSizeFor(expectedSize);
+        slots = new int[tableSize];
+        Arrays.fill(slots, EMPTY_SLOT);
+        terms = new String[(int) (tableSize * LOAD_FACTOR)];
+        hashes = new int[terms.length];
+        mask = tableSize - 1;
+    }
+
+    public int get(char[] chars, int start, int length) {
+        // Id of the term spanning chars[start, start + length), -1 if it has not been added
+
+        int hash = hash(chars, start, length);
+        for (int slot = slotOf(hash); slots[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && equals(terms[id], chars, start, length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public int get(String term) {
+        // Id of the term, -1 if it has not been added
+
+        int hash = term.hashCode();
+        for (int slot = slotOf(hash); slots[slot] != EMPTY_SLOT; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (hashes[id] == hash && terms[id].equals(term)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public int add(char[] chars, int start, int length) {
+        // Add a term that is not in the table yet and return its id
+
+        return add(new String(chars, start, length));
+    }
+
+    public int add(String term) {
+        // Add a term that is not in the table yet and return its id
+
+        if (size == terms.length) {
+            grow();
+        }
+        int id = size++;
+        terms[id] = term;
+        hashes[id] = term.hashCode();
+        insert(id);
+        return id;
+    }
+
+    public String getTerm(int id) {
+        return terms[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(slots, EMPTY_SLOT);
+        Arrays.fill(terms, 0, size, null);
+        size = 0;
+    }
+
+    private void insert(int id) {
+        int slot = slotOf(hashes[id]);
+        while (slots[slot] != EMPTY_SLOT) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id;
+    }
+
+    private void grow() {
+        // Double the table and re-insert every id, the terms keep their ids
+
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY_SLOT);
+        mask = slots.length - 1;
+        terms = Arrays.copyOf(terms, (int) (slots.length * LOAD_FACTOR));
+        hashes = Arrays.copyOf(hashes, terms.length);
+        for (int id = 0; id < size; id++) {
+            insert(id);
+        }
+    }
+
+    private int slotOf(int hash) {
+        // Spread the high bits of the hash, String.hashCode differs mostly in its low bits for short terms
+        return IntIntHashMap.hash(hash) & mask;
+    }
+
+    private static int hash(char[] chars, int start, int length) {
+        // String.hashCode of the span
+
+        int hash = 0;
+        for (int idx = start; idx < start + length; idx++) {
+            hash = 31 * hash + chars[idx];
+        }
+        return hash;
+    }
+
+    private static boolean equals(String term, char[] chars, int start, int length) {
+        if (term.length() != length) {
+            return false;
+        }
+        for (int idx = 0; idx < length; idx++) {
+            if (term.charAt(idx) != chars[start + idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
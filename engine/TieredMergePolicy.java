@@ -0,0 +1,37 @@
+import java.util.List;
+
+public class TieredMergePolicy {
+    // Chooses which segments to merge. Segments are grouped into tiers by size: tier 0 holds segments of up to
+    // FLOOR_SEGMENT_DOCUMENTS documents, and every following tier holds segments MERGE_FACTOR times larger.
+    // Once MERGE_FACTOR adjacent segments are in the same tier they are merged into one segment of the next tier,
+    // so the number of segments grows with the logarithm of the collection size and every document is rewritten
+    // about once per tier. Only adjacent segments are merged, which keeps the internal ids of a segment contiguous
+    static final int MERGE_FACTOR = 4;
+    static final int FLOOR_SEGMENT_DOCUMENTS = 1000;
+
+    public static int[] findMerge(List<SegmentManifest.SegmentInfo> segments) {
+        // Return the [start, end) range of segments to merge next, or null if no tier is full
+        // The newest segments are considered first, since that is where small segments accumulate
+
+        int runEnd = segments.size();
+        for (int idx = segments.size() - 1; idx >= 0; idx--) {
+            if (idx < segments.size() - 1 && tier(segments.get(idx)) != tier(segments.get(idx + 1))) {
+                runEnd = idx + 1;
+            }
+            if (runEnd - idx == MERGE_FACTOR) {
+                return new int[]{idx, runEnd};
+            }
+        }
+        return null;
+    }
+
+    static int tier(SegmentManifest.SegmentInfo segment) {
+        int tier = 0;
+        long tierLimit = FLOOR_SEGMENT_DOCUMENTS;
+        while (segment.documentCount > tierLimit) {
+            tier++;
+            tierLimit *= MERGE_FACTOR;
+        }
+        return tier;
+    }
+}
@@ -0,0 +1,83 @@
+import java.util.Arrays;
+import java.util.Locale;
+
+public class Tokenizer {
+    // Splits text into lowercase tokens of letters and digits, the tokens of DocumentUtils.tokenize without a String per
+    // token: the text is lowercased into a reused buffer and every token is handed to a TokenHandler as a span of it
+    // A Tokenizer is not thread-safe, every indexing worker has its own
+    // Based on SimpleTokenizer by Trevor Strohman
+
+    public interface TokenHandler {
+        // Called for every token in text order, the span is only valid until the handler returns
+        void token(char[] text, int start, int length);
+    }
+
+    private char[] buffer = new char[256];
+
+    public void tokenize(CharSequence text, TokenHandler handler) {
+        int length = lowercase(text);
+        int start = 0;
+        for (int idx = 0; idx < length; idx++) {
+            if (!Character.isLetterOrDigit(buffer[idx])) {
+                if (start != idx) {
+                    handler.token(buffer, start, idx - start);
+                }
+                start = idx + 1;
+            }
+        }
+
+        if (start != length) {
+            handler.token(buffer, start, length - start);
+        }
+    }
+
+    private int lowercase(CharSequence text) {
+        // Lowercase the text into the buffer and return its length
+        // Lowercasing char by char gives the same tokens as String.toLowerCase except for the context- and locale-dependent
+        // rules of String.toLowerCase, which are left to it when the text or the default locale needs them.
+        // Surrogates are not letters or digits, so lowercasing supplementary characters cannot change the tokens
+
+        if (hasSpecialCasing(text)) {
+            text = text.toString().toLowerCase();
+            ensureCapacity(text.length());
+            for (int idx = 0; idx < text.length(); idx++) {
+                buffer[idx] = text.charAt(idx);
+            }
+            return text.length();
+        }
+
+        ensureCapacity(text.length());
+        for (int idx = 0; idx < text.length(); idx++) {
+            char c = text.charAt(idx);
+            if (c < 0x80) {
+                buffer[idx] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+            } else {
+                buffer[idx] = Character.toLowerCase(c);
+            }
+        }
+        return text.length();
+    }
+
+    private static boolean hasSpecialCasing(CharSequence text) {
+        // Capital I with dot above and capital sigma lowercase differently in a String, as do Turkish, Azeri and
+        // Lithuanian texts
+
+        String language = Locale.getDefault().getLanguage();
+        if (language.equals("tr") || language.equals("az") || language.equals("lt")) {
+            return true;
+        }
+        for (int idx = 0; idx < text.length(); idx++) {
+            char c = text.charAt(idx);
+            if (c == '\u0130' || c == '\u03A3') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int length) {
+        if (length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length, buffer.length * 2));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+public class TopDocsCollector {
+    // Keeps the k best documents collected so far, by decreasing score and then increasing internal id, so documents
+    // with the same score always rank in the same order
+    // They are kept in a binary min-heap over two parallel arrays of fixed capacity k, with the worst of them at the
+    // root: once k documents are kept, its score is the threshold a document has to reach to enter, which lets
+    // evaluation strategies skip the documents that cannot. Collecting never allocates, and reset() makes the collector
+    // ready for the next query
+
+    private final int k;
+    private final int[] docIds;
+    private final double[] scores;
+    private int size = 0;
+
+    TopDocsCollector(int k) {
+        this.k = k;
+        this.docIds = new int[k];
+        this.scores = new double[k];
+    }
+
+    public void reset() {
+        // Forget the collected documents, also after sort()
+        size = 0;
+    }
+
+    public void collect(int internalId, double score) {
+        if (size < k) {
+            docIds[size] = internalId;
+            scores[size] = score;
+            siftUp(size++);
+            return;
+        }
+        if (k > 0 && isWorse(docIds[0], scores[0], internalId, score)) {
+            docIds[0] = internalId;
+            scores[0] = score;
+            siftDown(0, size);
+        }
+    }
+
+    public double threshold() {
+        // Score to beat for a document with a higher internal id than every collected document to enter the top k
+        return size < k || k == 0 ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public int sort() {
+        // Order the collected documents by rank, they are read with docId(rank) and score(rank) from 0, and return
+        // their number
+        // Heapsort in place: the worst document left in the heap moves to the end of it every time
+
+        for (int end = size - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        return size;
+    }
+
+    public int docId(int rank) {
+        return docIds[rank];
+    }
+
+    public double score(int rank) {
+        return scores[rank];
+    }
+
+    private static boolean isWorse(int docId, double score, int otherDocId, double otherScore) {
+        // Whether a document ranks below another one
+        return score < otherScore || (score == otherScore && docId > otherDocId);
+    }
+
+    private void siftUp(int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (!isWorse(docIds[idx], scores[idx], docIds[parent], scores[parent])) {
+                return;
+            }
+            swap(idx, parent);
+            idx = parent;
+        }
+    }
+
+    private void siftDown(int idx, int heapSize) {
+        while (true) {
+            int worst = idx;
+            int left = 2 * idx + 1;
+            int right = left + 1;
+            if (left < heapSize && isWorse(docIds[left], scores[left], docIds[worst], scores[worst])) {
+                worst = left;
+            }
+            if (right < heapSize && isWorse(docIds[right], scores[right], docIds[worst], scores[worst])) {
+                worst = right;
+            }
+            if (worst == idx) {
+                return;
+            }
+            swap(idx, worst);
+            idx = worst;
+        }
+    }
+
+    private void swap(int idx, int other) {
+        int docId = docIds[idx];
+        docIds[idx] = docIds[other];
+        docIds[other] = docId;
+        double score = scores[idx];
+        scores[idx] = scores[other];
+        scores[other] = score;
+    }
+}
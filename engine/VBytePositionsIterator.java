@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+
+public class VBytePositionsIterator implements PositionsIterator {
+    // Decodes a positions list written by PositionsBuffer straight from the underlying buffer
+    // Positions are decoded only when asked for, moving to another document skips the unread ones byte by byte
+
+    private final ByteBuffer data;
+    private final int documentFrequency;
+    private int position;
+    private int remaining;
+    private int docId = -1;
+    private int lastDocId = 0;
+    private int frequency = 0;
+    private int unreadPositions = 0;
+    private int lastPosition = 0;
+
+    VBytePositionsIterator(ByteBuffer data, int offset, int documentFrequency) {
+        this.data = data;
+        this.position = offset;
+        this.documentFrequency = documentFrequency;
+        this.remaining = documentFrequency;
+    }
+
+    @Override
+    public int nextDoc() {
+        skipPositions();
+        if (remaining == 0) {
+            docId = NO_MORE_DOCS;
+            frequency = 0;
+            return docId;
+        }
+        remaining--;
+        lastDocId += readVByte();
+        frequency = readVByte();
+        unreadPositions = frequency;
+        lastPosition = 0;
+        docId = lastDocId;
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        while (docId < target) {
+            nextDoc();
+        }
+        return docId;
+    }
+
+    @Override
+    public int nextPosition() {
+        if (unreadPositions == 0) {
+            return NO_MORE_POSITIONS;
+        }
+        unreadPositions--;
+        lastPosition += readVByte();
+        return lastPosition;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    private void skipPositions() {
+        // Every byte without the continuation bit ends one position
+        while (unreadPositions > 0) {
+            if ((data.get(position++) & 0x80) == 0) {
+                unreadPositions--;
+            }
+        }
+    }
+
+    private int readVByte() {
+        byte current = data.get(position++);
+        int value = current & 0x7F;
+        int shift = 7;
+        while ((current & 0x80) != 0) {
+            current = data.get(position++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,72 @@
+import java.nio.ByteBuffer;
+
+public class VBytePostingsIterator implements PostingsIterator {
+    // Decodes a postings list written by PostingsBuffer straight from the underlying buffer, one posting at a time
+
+    private final ByteBuffer data;
+    private final int documentFrequency;
+    private int position;
+    private int remaining;
+    private int docId = -1;
+    private int lastDocId = 0;
+    private int frequency = 0;
+
+    VBytePostingsIterator(ByteBuffer data, int offset, int documentFrequency) {
+        this.data = data;
+        this.position = offset;
+        this.documentFrequency = documentFrequency;
+        this.remaining = documentFrequency;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (remaining == 0) {
+            docId = NO_MORE_DOCS;
+            return docId;
+        }
+        remaining--;
+        lastDocId += readVByte();
+        frequency = readVByte();
+        docId = lastDocId;
+        return docId;
+    }
+
+    @Override
+    public int advance(int target) {
+        while (docId < target) {
+            nextDoc();
+        }
+        return docId;
+    }
+
+    @Override
+    public int docId() {
+        return docId;
+    }
+
+    @Override
+    public int frequency() {
+        return frequency;
+    }
+
+    @Override
+    public int documentFrequency() {
+        return documentFrequency;
+    }
+
+    public int decodedPostings() {
+        return documentFrequency - remaining;
+    }
+
+    private int readVByte() {
+        byte current = data.get(position++);
+        int value = current & 0x7F;
+        int shift = 7;
+        while ((current & 0x80) != 0) {
+            current = data.get(position++);
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class VariantManifest {
+    // The index variants of a store (see IndexFormat for the layout of variants.manifest)
+    // Every variant indexes the same documents with the same internal ids, unstemmed or Porter-stemmed, and has its own
+    // directory of segments. Query programs open the variant matching their tokenization, or the other one if the store
+    // only has that one
+
+    private final String storePath;
+    private boolean unstemmed;
+    private boolean stemmed;
+
+    private VariantManifest(String storePath, boolean unstemmed, boolean stemmed) {
+        this.storePath = storePath;
+        this.unstemmed = unstemmed;
+        this.stemmed = stemmed;
+    }
+
+    public static VariantManifest read(String storePath) throws IOException {
+        // Read the variants of a store, a store without a manifest has no variants yet
+
+        Path manifestPath = Paths.get(storePath + IndexFormat.VARIANTS_MANIFEST_FILENAME);
+        if (!Files.exists(manifestPath)) {
+            return new VariantManifest(storePath, false, false);
+        }
+
+        ByteBuffer manifest = ByteBuffer.wrap(Files.readAllBytes(manifestPath)).order(IndexFormat.BYTE_ORDER);
+        if (manifest.remaining() < 12 || manifest.getInt() != IndexFormat.MAGIC) {
+            throw new IOException("No variants manifest found at " + storePath);
+        }
+        int version = manifest.getInt();
+        if (version != IndexFormat.VERSION) {
+            throw new IOException("Unsupported index version " + version + " at " + storePath);
+        }
+        int variantCount = manifest.getInt();
+        boolean unstemmed = false;
+        boolean stemmed = false;
+        for (int variant = 0; variant < variantCount; variant++) {
+            if (manifest.get() == 1) {
+                stemmed = true;
+            } else {
+                unstemmed = true;
+            }
+        }
+        return new VariantManifest(storePath, unstemmed, stemmed);
+    }
+
+    public void write() throws IOException {
+        // Atomically replace the variants manifest of the store with this one
+
+        int variantCount = (unstemmed ? 1 : 0) + (stemmed ? 1 : 0);
+        ByteBuffer manifest = ByteBuffer.allocate(12 + variantCount).order(IndexFormat.BYTE_ORDER);
+        manifest.putInt(IndexFormat.MAGIC);
+        manifest.putInt(IndexFormat.VERSION);
+        manifest.putInt(variantCount);
+        if (unstemmed) {
+            manifest.put((byte) 0);
+        }
+        if (stemmed) {
+            manifest.put((byte) 1);
+        }
+
+        Path manifestPath = Paths.get(storePath + IndexFormat.VARIANTS_MANIFEST_FILENAME);
+        Path pendingPath = Paths.get(storePath + IndexFormat.VARIANTS_MANIFEST_FILENAME + ".pending");
+        Files.write(pendingPath, manifest.array());
+        Files.move(pendingPath, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void publishSegments(List<SegmentManifest> manifests) throws IOException {
+        // Make the segments added to the manifests of the variants live together (see IndexFormat): every manifest is
+        // staged, then the commit marker makes the update final before the manifests are moved over the live ones
+
+        for (SegmentManifest manifest : manifests) {
+            manifest.stage();
+        }
+        Path commitPath = Paths.get(storePath + IndexFormat.SEGMENTS_COMMIT_FILENAME);
+        Files.write(commitPath, new byte[0]);
+        for (SegmentManifest manifest : manifests) {
+            manifest.commit();
+        }
+        Files.delete(commitPath);
+    }
+
+    public void recoverSegments() throws IOException {
+        // Finish the publication of segments interrupted after its commit marker was written, or undo one interrupted
+        // before. Only the holder of the write lock may call this
+
+        Path commitPath = Paths.get(storePath + IndexFormat.SEGMENTS_COMMIT_FILENAME);
+        boolean committing = Files.exists(commitPath);
+        for (boolean stemmed : new boolean[]{false, true}) {
+            SegmentManifest.recover(variantPath(stemmed), committing);
+        }
+        Files.deleteIfExists(commitPath);
+    }
+
+    public int getDocumentCount() throws IOException {
+        // Number of documents in the store, which every variant must agree on
+
+        int documentCount = -1;
+        for (boolean stemmed : new boolean[]{false, true}) {
+            if (hasVariant(stemmed)) {
+                int variantDocumentCount = SegmentManifest.read(variantPath(stemmed)).getDocumentCount();
+                if (documentCount >= 0 && variantDocumentCount != documentCount) {
+                    throw new IOException("The index variants at " + storePath + " hold " + documentCount + " and " +
+                            variantDocumentCount + " documents, an update of the store was interrupted");
+                }
+                documentCount = variantDocumentCount;
+            }
+        }
+        return Math.max(0, documentCount);
+    }
+
+    public void addVariant(boolean stemmed) {
+        if (stemmed) {
+            this.stemmed = true;
+        } else {
+            this.unstemmed = true;
+        }
+    }
+
+    public boolean hasVariant(boolean stemmed) {
+        return stemmed ? this.stemmed : this.unstemmed;
+    }
+
+    public boolean isEmpty() {
+        return !unstemmed && !stemmed;
+    }
+
+    public String variantPath(boolean stemmed) {
+        // Directory holding the segments.manifest and segments of a variant
+        return storePath + (stemmed ? IndexFormat.STEMMED_DIRECTORY : IndexFormat.UNSTEMMED_DIRECTORY);
+    }
+
+    public String selectVariant(boolean stemmed) throws IOException {
+        // Path of the requested variant, or of the other one if the store does not have it
+
+        if (hasVariant(stemmed)) {
+            return variantPath(stemmed);
+        }
+        if (hasVariant(!stemmed)) {
+            Logger.getLogger("VariantManifest").log(Level.WARNING, "The index at " + storePath + " was built " +
+                    (stemmed ? "without" : "with") + " stemming only, queries are tokenized to match it");
+            return variantPath(!stemmed);
+        }
+        throw new IOException("No index found at " + storePath);
+    }
+}
@@ -0,0 +1,82 @@
+public class WandEvaluator implements QueryEvaluator {
+    // Document-at-a-time evaluation with WAND pruning (Broder et al., 2003), one segment after the other with the
+    // statistics of the whole collection
+    // Every query term has a cursor in its postings and an upper bound on the score it adds to a document. With the
+    // cursors sorted by docId, the pivot is the first cursor at which the upper bounds of the cursors up to it exceed
+    // the threshold of the collector. A document before the pivot's only occurs in the cursors before the pivot, so it
+    // cannot enter the top documents: those cursors skip to the pivot's document, which is scored once the first cursor
+    // is on it. Documents come in increasing internal id order, so a document has to beat the threshold to enter
+
+    @Override
+    public void evaluate(RankedQuery query, TopDocsCollector collector) {
+        for (int segment = 0; segment < query.index.getSegmentCount(); segment++) {
+            evaluateSegment(query, segment, collector);
+        }
+    }
+
+    private static void evaluateSegment(RankedQuery query, int segment, TopDocsCollector collector) {
+        int docBase = query.index.getDocBase(segment);
+        TermCursor[] cursors = new TermCursor[query.terms.length];
+        int cursorCount = TermCursor.openCursors(query, segment, cursors);
+
+        double[] termScores = new double[query.terms.length];
+        boolean[] matchedTerms = new boolean[query.terms.length];
+        while (true) {
+            TermCursor.sortByDocId(cursors, cursorCount);
+
+            int pivot = findPivot(cursors, cursorCount, collector.threshold());
+            if (pivot < 0) {
+                // No document left in the segment can enter the top documents
+                break;
+            }
+
+            int pivotDocId = cursors[pivot].docId();
+            if (cursors[0].docId() == pivotDocId) {
+                scoreDocument(query, docBase, cursors, cursorCount, termScores, matchedTerms, collector);
+            } else {
+                for (int cursor = 0; cursor < pivot; cursor++) {
+                    cursors[cursor].postings.advance(pivotDocId);
+                }
+            }
+        }
+
+        for (int cursor = 0; cursor < cursorCount; cursor++) {
+            query.addDecodedPostings(cursors[cursor].decodedPostings());
+        }
+    }
+
+    static int findPivot(TermCursor[] cursors, int cursorCount, double threshold) {
+        // First cursor at which the upper bounds of the cursors up to it exceed the threshold, -1 if there is none
+
+        double bound = 0;
+        for (int cursor = 0; cursor < cursorCount && cursors[cursor].docId() != PostingsIterator.NO_MORE_DOCS; cursor++) {
+            bound += cursors[cursor].upperBound;
+            if (bound > threshold) {
+                return cursor;
+            }
+        }
+        return -1;
+    }
+
+    static void scoreDocument(RankedQuery query, int docBase, TermCursor[] cursors, int cursorCount, double[] termScores,
+                              boolean[] matchedTerms, TopDocsCollector collector) {
+        // Score the document of the first cursor, every cursor on it holds one of its terms, and move them past it
+
+        int docId = cursors[0].docId();
+        int internalId = docBase + docId;
+        int matchedCursors = 0;
+        while (matchedCursors < cursorCount && cursors[matchedCursors].docId() == docId) {
+            TermCursor cursor = cursors[matchedCursors];
+            termScores[cursor.term] = query.termScore(cursor.term, internalId, cursor.postings.frequency());
+            matchedTerms[cursor.term] = true;
+            matchedCursors++;
+        }
+        if (query.accepts(internalId)) {
+            collector.collect(internalId, query.sumInQueryOrder(termScores, matchedTerms));
+        }
+        for (int cursor = 0; cursor < matchedCursors; cursor++) {
+            matchedTerms[cursors[cursor].term] = false;
+            cursors[cursor].postings.nextDoc();
+        }
+    }
+}
@@ -1,4 +1,9 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -16,14 +21,12 @@ public class TBG {
         // calculates TBG
 
         ArrayList<Double> tbgs = new ArrayList<>();
-        ArrayList<Integer> documentLengths = null;
+        int[] documentLengths = null;
         HashMap<String, Integer> docnoToInternalIdMap = new HashMap<>();
 
         // Initialize docnoToInternalID mapping and document lengths from HW2
         try {
-            FileInputStream fis = new FileInputStream("/Users/billsheng/Desktop/541/store" + "/documentLengths.ser");
-            ObjectInputStream ois = new ObjectInputStream(fis);
-            documentLengths = (ArrayList<Integer>) ois.readObject();
+            documentLengths = readDocumentLengths("/Users/billsheng/Desktop/541/store");
 
             File mappingFile = new File("/Users/billsheng/Desktop/541/store" + "/IDMapping.txt");
             BufferedReader mappingReader = new BufferedReader(new FileReader(mappingFile));
@@ -39,7 +42,7 @@ public class TBG {
 
                 mappingLine = mappingReader.readLine();
             }
-        } catch (IOException | ClassNotFoundException e) {
+        } catch (IOException e) {
             Logger.getLogger("IREvaluator").log(Level.SEVERE, e.toString());
         }
 
@@ -70,20 +73,62 @@ public class TBG {
         return tbgs;
     }
 
+    private static int[] readDocumentLengths(String storePath) throws IOException {
+        // Reads the document lengths of every index segment listed in segments.manifest, indexed by internal id
+        // Every index variant of the store has the same document lengths, so the first one listed in variants.manifest is read
+        // variants.manifest: magic, version, variantCount, then stemmed (byte) per variant
+        // segments.manifest: magic, version, nextSegmentNumber, segmentCount, then segmentNumber, docBase, documentCount per segment
+
+        ByteBuffer variants = readSection(storePath + "/variants.manifest");
+        String variantPath = storePath + (variants.get(12) == 1 ? "/stemmed" : "/unstemmed");
+
+        ByteBuffer manifest = readSection(variantPath + "/segments.manifest");
+        manifest.position(12);
+        int segmentCount = manifest.getInt();
+        int[] segmentNumbers = new int[segmentCount];
+        int[] docBases = new int[segmentCount];
+        int documentCount = 0;
+        for (int segment = 0; segment < segmentCount; segment++) {
+            segmentNumbers[segment] = manifest.getInt();
+            docBases[segment] = manifest.getInt();
+            documentCount = docBases[segment] + manifest.getInt();
+        }
+
+        int[] documentLengths = new int[documentCount];
+        for (int segment = 0; segment < segmentCount; segment++) {
+            ByteBuffer section = readSection(variantPath + "/segments/segment-" + segmentNumbers[segment] + "/documentLengths.bin");
+            section.asIntBuffer().get(documentLengths, docBases[segment], section.remaining() / Integer.BYTES);
+        }
+        return documentLengths;
+    }
+
+    private static ByteBuffer readSection(String path) throws IOException {
+        // Reads a whole index file, numbers in the index are little-endian
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer section = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (section.hasRemaining() && channel.read(section) >= 0) {
+                // keep reading until the section is fully loaded
+            }
+            section.flip();
+            return section;
+        }
+    }
+
     public static double getDecay(double expectedTimeToReachK) {
         // calculates TBG decay
 
         return Math.exp((-1 * expectedTimeToReachK * (Math.log(2))) / 224);
     }
 
-    private static double getExpectedTimeToReachK(int rankLimit, QRels qrels, ArrayList<Result> topicResults, HashMap<String, Integer> docnoToInternalIdMap, ArrayList<Integer> documentLengths, String topic) {
+    private static double getExpectedTimeToReachK(int rankLimit, QRels qrels, ArrayList<Result> topicResults, HashMap<String, Integer> docnoToInternalIdMap, int[] documentLengths, String topic) {
         // calculates TBG expected time to reach K
 
         double timeToReachRankK = 0;
         for (int resultIdx = 1; resultIdx < rankLimit; resultIdx++) {
             Result result = topicResults.get(resultIdx - 1);
             int id = docnoToInternalIdMap.get(result.getDocno());
-            int documentLength = documentLengths.get(id);
+            int documentLength = documentLengths[id];
 
             double td = (0.018 * documentLength) + 7.8;
 